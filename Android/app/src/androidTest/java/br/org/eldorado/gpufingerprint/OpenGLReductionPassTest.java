@@ -0,0 +1,94 @@
+package br.org.eldorado.gpufingerprint;
+
+import android.opengl.GLES20;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * Instrumented test which checks, on the device GPU, that {@link OpenGLReductionPass} computes the
+ * same feature vector as {@link FingerprintReducer} does from the pixels read back.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OpenGLReductionPassTest {
+    private static final int WIDTH = 250;
+
+    private static final int HEIGHT = 250;
+
+    /**
+     * The number of tiles on each axis of the known image, which don't line up with the blocks of
+     * the reduction.
+     */
+    private static final int TILES = 5;
+
+    private OpenGLPixelBuffer pixelBuffer;
+
+    @Before
+    public void setUp() {
+        pixelBuffer = new OpenGLPixelBuffer(WIDTH, HEIGHT, new OpenGLContextFactory(),
+                OpenGLConfigClass.RGBA8888.createChooser());
+
+        assumeTrue(pixelBuffer.makeCurrent());
+    }
+
+    @After
+    public void tearDown() {
+        pixelBuffer.destroy();
+    }
+
+    @Test
+    public void reduce_matchesTheReducerOnAKnownImage() {
+        GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+
+        for (int y = 0; y < TILES; y++) {
+            for (int x = 0; x < TILES; x++) {
+                int tile = y * TILES + x;
+
+                GLES20.glScissor(x * WIDTH / TILES, y * HEIGHT / TILES, WIDTH / TILES,
+                        HEIGHT / TILES);
+                GLES20.glClearColor((tile * 10) / 255f, (255 - tile * 10) / 255f,
+                        ((tile * 37) % 256) / 255f, (128 + tile) / 255f);
+                GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            }
+        }
+
+        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+
+        OpenGLReductionPass reductionPass = new OpenGLReductionPass();
+        byte[] features = reductionPass.reduce(WIDTH, HEIGHT);
+
+        reductionPass.destroy();
+
+        // Devices without single precision fragment shaders don't reduce on the GPU at all.
+        assumeNotNull(features);
+        assertArrayEquals(FingerprintReducer.reduce(readPixels(), WIDTH, HEIGHT), features);
+    }
+
+    @Test
+    public void reduce_matchesTheReducerOnTheRenderedImage() {
+        pixelBuffer.setRenderer(new OpenGLRenderer());
+
+        // The reduction pass draws on its own framebuffer, so the frame is still on the surface.
+        byte[] features = pixelBuffer.getFeatures();
+
+        assumeNotNull(features);
+        assertArrayEquals(FingerprintReducer.reduce(readPixels(), WIDTH, HEIGHT), features);
+    }
+
+    private static int[] readPixels() {
+        IntBuffer pixels = IntBuffer.allocate(WIDTH * HEIGHT);
+
+        GLES20.glReadPixels(0, 0, WIDTH, HEIGHT, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+
+        return pixels.array();
+    }
+}
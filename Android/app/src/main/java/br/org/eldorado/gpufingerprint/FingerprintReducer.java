@@ -0,0 +1,219 @@
+package br.org.eldorado.gpufingerprint;
+
+/**
+ * Reduces a rendered frame to a small fingerprint feature vector. This is the reference
+ * implementation of the fragment shader used by {@link OpenGLReductionPass}, so the output read
+ * back from the GPU can be verified off-device.
+ * <p>
+ * The frame is split into {@link #BLOCKS} x {@link #BLOCKS} blocks and each block is described by
+ * 2 x 2 output texels:
+ * <ul>
+ * <li>(0, 0): the mean of each color channel;</li>
+ * <li>(1, 0): the mean of each color channel weighted by the luminance gradient;</li>
+ * <li>(0, 1): the luminance-weighted centroid (x, y), the mean luminance and the mean squared
+ * luminance;</li>
+ * <li>(1, 1): the variance of each color channel, scaled to [0, 1].</li>
+ * </ul>
+ * Every value is quantised to 8 bits, exactly as written to an RGBA8888 texture. Both the input and
+ * the output follow the OpenGL convention where the first row is the bottom one. Since the GPU
+ * evaluates the shader with its own float precision, its output may differ from this one by one
+ * quantisation step.
+ */
+final class FingerprintReducer {
+    /**
+     * The number of blocks on each axis of the frame.
+     */
+    static final int BLOCKS = 8;
+
+    /**
+     * The width and height of the reduced output, in texels.
+     */
+    static final int OUTPUT_SIZE = BLOCKS * 2;
+
+    /**
+     * Number of channels to define a color (red, green, blue and alpha).
+     */
+    static final int COLOR_CHANNELS = 4;
+
+    /**
+     * The size of the reduced output, in bytes.
+     */
+    static final int OUTPUT_BYTES = OUTPUT_SIZE * OUTPUT_SIZE * COLOR_CHANNELS;
+
+    /**
+     * The luminance weights of the red, green and blue channels.
+     */
+    private static final float[] LUMINANCE_WEIGHTS = {0.299f, 0.587f, 0.114f};
+
+    /**
+     * The maximum value of an 8 bits color channel.
+     */
+    private static final float CHANNEL_MAX = 255f;
+
+    /**
+     * Constructor.
+     */
+    private FingerprintReducer() {
+    }
+
+    /**
+     * Reduces a frame to its fingerprint feature vector.
+     *
+     * @param pixels the frame pixels, as read by {@code glReadPixels} with {@code GL_RGBA} and
+     *               {@code GL_UNSIGNED_BYTE} into an int array on a little-endian device: red on
+     *               the lowest byte, alpha on the highest one.
+     * @param width  the frame width.
+     * @param height the frame height.
+     * @return the {@link #OUTPUT_BYTES} bytes of the reduced output, in RGBA order.
+     */
+    static byte[] reduce(int[] pixels, int width, int height) {
+        if ((width < BLOCKS) || (height < BLOCKS) || (pixels.length < width * height)) {
+            throw new IllegalArgumentException("Frame too small to be reduced: " + width + "x"
+                    + height);
+        }
+
+        byte[] output = new byte[OUTPUT_BYTES];
+
+        for (int blockY = 0; blockY < BLOCKS; blockY++) {
+            for (int blockX = 0; blockX < BLOCKS; blockX++) {
+                reduceBlock(pixels, width, height, blockX, blockY, output);
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Reduces a single block of the frame into its 2 x 2 output texels.
+     *
+     * @param pixels the frame pixels.
+     * @param width  the frame width.
+     * @param height the frame height.
+     * @param blockX the block column.
+     * @param blockY the block row.
+     * @param output the reduced output.
+     */
+    private static void reduceBlock(int[] pixels, int width, int height, int blockX, int blockY,
+                                    byte[] output) {
+        int startX = blockX * width / BLOCKS;
+        int endX = (blockX + 1) * width / BLOCKS;
+        int startY = blockY * height / BLOCKS;
+        int endY = (blockY + 1) * height / BLOCKS;
+        float sizeX = endX - startX;
+        float sizeY = endY - startY;
+        float count = sizeX * sizeY;
+
+        float[] sum = new float[COLOR_CHANNELS];
+        float[] squares = new float[COLOR_CHANNELS];
+        float[] edges = new float[COLOR_CHANNELS];
+        float[] color = new float[COLOR_CHANNELS];
+        float luminanceSum = 0f;
+        float luminanceSquares = 0f;
+        float momentX = 0f;
+        float momentY = 0f;
+
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                unpack(pixels[y * width + x], color);
+
+                float luminance = luminance(color);
+                float gradient = Math.min(1f,
+                        Math.abs(luminanceAt(pixels, width, height, x + 1, y) - luminance)
+                                + Math.abs(luminanceAt(pixels, width, height, x, y + 1)
+                                - luminance));
+
+                for (int c = 0; c < COLOR_CHANNELS; c++) {
+                    sum[c] += color[c];
+                    squares[c] += color[c] * color[c];
+                    edges[c] += color[c] * gradient;
+                }
+
+                luminanceSum += luminance;
+                luminanceSquares += luminance * luminance;
+                momentX += luminance * (x - startX + 0.5f) / sizeX;
+                momentY += luminance * (y - startY + 0.5f) / sizeY;
+            }
+        }
+
+        float[] mean = new float[COLOR_CHANNELS];
+        float[] weighted = new float[COLOR_CHANNELS];
+        float[] variance = new float[COLOR_CHANNELS];
+
+        for (int c = 0; c < COLOR_CHANNELS; c++) {
+            mean[c] = sum[c] / count;
+            weighted[c] = edges[c] / count;
+            variance[c] = (squares[c] / count - mean[c] * mean[c]) * 4f;
+        }
+
+        float[] moments = {luminanceSum > 0f ? momentX / luminanceSum : 0.5f,
+                luminanceSum > 0f ? momentY / luminanceSum : 0.5f, luminanceSum / count,
+                luminanceSquares / count};
+
+        int texelX = blockX * 2;
+        int texelY = blockY * 2;
+
+        store(output, texelX, texelY, mean);
+        store(output, texelX + 1, texelY, weighted);
+        store(output, texelX, texelY + 1, moments);
+        store(output, texelX + 1, texelY + 1, variance);
+    }
+
+    /**
+     * Returns the luminance of a pixel, clamping the coordinates to the frame edges.
+     *
+     * @param pixels the frame pixels.
+     * @param width  the frame width.
+     * @param height the frame height.
+     * @param x      the pixel column.
+     * @param y      the pixel row.
+     * @return the pixel luminance.
+     */
+    private static float luminanceAt(int[] pixels, int width, int height, int x, int y) {
+        float[] color = new float[COLOR_CHANNELS];
+
+        unpack(pixels[Math.min(y, height - 1) * width + Math.min(x, width - 1)], color);
+
+        return luminance(color);
+    }
+
+    /**
+     * Returns the luminance of a color.
+     *
+     * @param color the normalized color channels.
+     * @return the color luminance.
+     */
+    private static float luminance(float[] color) {
+        return color[0] * LUMINANCE_WEIGHTS[0] + color[1] * LUMINANCE_WEIGHTS[1]
+                + color[2] * LUMINANCE_WEIGHTS[2];
+    }
+
+    /**
+     * Unpacks a pixel into its normalized color channels.
+     *
+     * @param pixel the pixel, with red on the lowest byte.
+     * @param color the array receiving the red, green, blue and alpha channels.
+     */
+    private static void unpack(int pixel, float[] color) {
+        for (int c = 0; c < COLOR_CHANNELS; c++) {
+            color[c] = ((pixel >>> (c * Byte.SIZE)) & 0xFF) / CHANNEL_MAX;
+        }
+    }
+
+    /**
+     * Quantises the given values to 8 bits and stores them into an output texel.
+     *
+     * @param output the reduced output.
+     * @param x      the texel column.
+     * @param y      the texel row.
+     * @param values the red, green, blue and alpha values, in [0, 1].
+     */
+    private static void store(byte[] output, int x, int y, float[] values) {
+        int offset = (y * OUTPUT_SIZE + x) * COLOR_CHANNELS;
+
+        for (int c = 0; c < COLOR_CHANNELS; c++) {
+            float value = Math.max(0f, Math.min(1f, values[c]));
+
+            output[offset + c] = (byte) Math.round(value * CHANNEL_MAX);
+        }
+    }
+}
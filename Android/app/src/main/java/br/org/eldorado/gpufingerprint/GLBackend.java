@@ -0,0 +1,180 @@
+package br.org.eldorado.gpufingerprint;
+
+/**
+ * The subset of OpenGL ES 2 used by {@link OpenGLRenderer}. Calls go through this interface so they
+ * can be recorded into a {@link GLCommandBuffer} and replayed, either on the device or against
+ * another implementation off-device.
+ */
+interface GLBackend {
+    /**
+     * Creates a shader object.
+     *
+     * @param type the shader type, vertex or fragment.
+     * @return the shader handle.
+     */
+    int glCreateShader(int type);
+
+    /**
+     * Replaces the source code of a shader.
+     *
+     * @param shader the shader handle.
+     * @param source the source code.
+     */
+    void glShaderSource(int shader, String source);
+
+    /**
+     * Compiles the source code of a shader.
+     *
+     * @param shader the shader handle.
+     */
+    void glCompileShader(int shader);
+
+    /**
+     * Creates a program object.
+     *
+     * @return the program handle.
+     */
+    int glCreateProgram();
+
+    /**
+     * Attaches a shader to a program.
+     *
+     * @param program the program handle.
+     * @param shader  the shader handle.
+     */
+    void glAttachShader(int program, int shader);
+
+    /**
+     * Links the shaders attached to a program.
+     *
+     * @param program the program handle.
+     */
+    void glLinkProgram(int program);
+
+    /**
+     * Returns a single program parameter, like {@code glGetProgramiv} does into an array.
+     *
+     * @param program the program handle.
+     * @param name    the parameter name.
+     * @return the parameter value.
+     */
+    int glGetProgram(int program, int name);
+
+    /**
+     * Installs a program as part of the current rendering state.
+     *
+     * @param program the program handle.
+     */
+    void glUseProgram(int program);
+
+    /**
+     * Returns the location of an attribute of a linked program.
+     *
+     * @param program the program handle.
+     * @param name    the attribute name.
+     * @return the attribute location, or -1 if the program has no such active attribute.
+     */
+    int glGetAttribLocation(int program, String name);
+
+    /**
+     * Enables a vertex attribute array, so it is used by the draw calls.
+     *
+     * @param index the attribute location.
+     */
+    void glEnableVertexAttribArray(int index);
+
+    /**
+     * Generates a single buffer, like {@code glGenBuffers} does into an array.
+     *
+     * @return the buffer handle.
+     */
+    int glGenBuffer();
+
+    /**
+     * Binds a buffer to a target.
+     *
+     * @param target the buffer target.
+     * @param buffer the buffer handle, or 0 to unbind the target.
+     */
+    void glBindBuffer(int target, int buffer);
+
+    /**
+     * Fills the bound buffer with float values.
+     *
+     * @param target the buffer target.
+     * @param data   the float values.
+     * @param usage  the expected usage of the buffer.
+     */
+    void glBufferData(int target, float[] data, int usage);
+
+    /**
+     * Sets the color the color buffer is cleared to.
+     *
+     * @param red   the red component.
+     * @param green the green component.
+     * @param blue  the blue component.
+     * @param alpha the alpha component.
+     */
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    /**
+     * Enables a server-side capability.
+     *
+     * @param capability the capability, e.g. {@code GL_DEPTH_TEST}.
+     */
+    void glEnable(int capability);
+
+    /**
+     * Clears buffers to their preset values.
+     *
+     * @param mask the bitwise OR of the buffers to clear.
+     */
+    void glClear(int mask);
+
+    /**
+     * Defines a vertex attribute array sourced from the bound buffer.
+     *
+     * @param index      the attribute location.
+     * @param size       the number of components per vertex.
+     * @param type       the component type.
+     * @param normalized whether fixed-point values are normalized.
+     * @param stride     the byte offset between consecutive vertices.
+     * @param offset     the byte offset of the first component in the bound buffer.
+     */
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                               int offset);
+
+    /**
+     * Returns the location of a uniform of a linked program.
+     *
+     * @param program the program handle.
+     * @param name    the uniform name.
+     * @return the uniform location, or -1 if the program has no such active uniform.
+     */
+    int glGetUniformLocation(int program, String name);
+
+    /**
+     * Sets a single, non-transposed 4x4 matrix uniform.
+     *
+     * @param location the uniform location.
+     * @param matrix   the 16 matrix values, in column-major order.
+     */
+    void glUniformMatrix4fv(int location, float[] matrix);
+
+    /**
+     * Draws consecutive vertices of the enabled attribute arrays.
+     *
+     * @param mode  the primitive mode.
+     * @param first the index of the first vertex.
+     * @param count the number of vertices.
+     */
+    void glDrawArrays(int mode, int first, int count);
+
+    /**
+     * Draws unsigned short indices stored on the client side.
+     *
+     * @param mode    the primitive mode.
+     * @param indices the vertex indices.
+     */
+    void glDrawElements(int mode, short[] indices);
+}
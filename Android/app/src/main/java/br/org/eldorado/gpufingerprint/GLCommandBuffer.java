@@ -0,0 +1,504 @@
+package br.org.eldorado.gpufingerprint;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the OpenGL calls recorded by {@link GLCommandRecorder}. Each command
+ * is an opcode followed by its big-endian arguments; calls returning a value store the value
+ * returned when they were recorded, so the commands can be replayed on another context, where
+ * handles and locations differ.
+ */
+final class GLCommandBuffer {
+    static final int OP_CREATE_SHADER = 1;
+    static final int OP_SHADER_SOURCE = 2;
+    static final int OP_COMPILE_SHADER = 3;
+    static final int OP_CREATE_PROGRAM = 4;
+    static final int OP_ATTACH_SHADER = 5;
+    static final int OP_LINK_PROGRAM = 6;
+    static final int OP_GET_PROGRAM = 7;
+    static final int OP_USE_PROGRAM = 8;
+    static final int OP_GET_ATTRIB_LOCATION = 9;
+    static final int OP_ENABLE_VERTEX_ATTRIB_ARRAY = 10;
+    static final int OP_GEN_BUFFER = 11;
+    static final int OP_BIND_BUFFER = 12;
+    static final int OP_BUFFER_DATA = 13;
+    static final int OP_CLEAR_COLOR = 14;
+    static final int OP_ENABLE = 15;
+    static final int OP_CLEAR = 16;
+    static final int OP_VERTEX_ATTRIB_POINTER = 17;
+    static final int OP_GET_UNIFORM_LOCATION = 18;
+    static final int OP_UNIFORM_MATRIX4FV = 19;
+    static final int OP_DRAW_ARRAYS = 20;
+    static final int OP_DRAW_ELEMENTS = 21;
+
+    /**
+     * The charset of the encoded strings.
+     */
+    static final String CHARSET = "UTF-8";
+
+    /**
+     * The version of the encoding, written first by {@link #serialize()}.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The encoded commands.
+     */
+    private final byte[] mCommands;
+
+    /**
+     * Constructor.
+     *
+     * @param commands the encoded commands.
+     */
+    GLCommandBuffer(byte[] commands) {
+        this.mCommands = commands;
+    }
+
+    /**
+     * Serializes the commands, so they can be attached to a fingerprint record.
+     *
+     * @return the serialized commands.
+     */
+    byte[] serialize() {
+        byte[] serialized = new byte[mCommands.length + 1];
+
+        serialized[0] = FORMAT_VERSION;
+        System.arraycopy(mCommands, 0, serialized, 1, mCommands.length);
+
+        return serialized;
+    }
+
+    /**
+     * Deserializes commands serialized by {@link #serialize()}.
+     *
+     * @param serialized the serialized commands.
+     * @return the commands.
+     * @throws IllegalArgumentException if the encoding version is not supported.
+     */
+    static GLCommandBuffer deserialize(byte[] serialized) {
+        if ((serialized.length == 0) || (serialized[0] != FORMAT_VERSION)) {
+            throw new IllegalArgumentException("Unsupported command buffer");
+        }
+
+        return new GLCommandBuffer(Arrays.copyOfRange(serialized, 1, serialized.length));
+    }
+
+    /**
+     * Replays the commands on a backend. Objects are created anew and queries are issued again,
+     * and the recorded handles and locations are translated into the ones the backend returned.
+     * Attribute and uniform locations are assumed to belong to a single program.
+     *
+     * @param backend the backend.
+     * @throws IllegalArgumentException if the commands are malformed.
+     */
+    void replay(GLBackend backend) {
+        Handles handles = new Handles();
+
+        for (Command command : decode(false)) {
+            command.execute(backend, handles);
+        }
+    }
+
+    /**
+     * Prepares the commands to be executed repeatedly on the context they were recorded on, as
+     * a steady-state frame. Commands are decoded once, queries are dropped since their recorded
+     * results are still valid, and matrix uploads repeating the value a location already holds are
+     * dropped.
+     *
+     * @return the prepared frame.
+     * @throws IllegalArgumentException if the commands are malformed or create objects.
+     */
+    Frame prepare() {
+        List<Command> commands = decode(true);
+
+        return new Frame(commands.toArray(new Command[0]));
+    }
+
+    /**
+     * Decodes the commands.
+     *
+     * @param frame true to decode a steady-state frame for {@link #prepare()}, false to decode
+     *              every command for {@link #replay(GLBackend)}.
+     * @return the decoded commands.
+     * @throws IllegalArgumentException if the commands are malformed, or if a frame creates objects.
+     */
+    private List<Command> decode(boolean frame) {
+        ByteBuffer buffer = ByteBuffer.wrap(mCommands);
+        List<Command> commands = new ArrayList<>();
+        Map<Integer, float[]> uniforms = new HashMap<>();
+
+        try {
+            while (buffer.hasRemaining()) {
+                int opcode = buffer.get();
+
+                switch (opcode) {
+                    case OP_CREATE_SHADER: {
+                        final int type = buffer.getInt();
+                        final int shader = buffer.getInt();
+
+                        checkNotFrame(frame, opcode);
+                        commands.add((backend, handles) -> handles.mObjects.put(shader,
+                                backend.glCreateShader(type)));
+                        break;
+                    }
+                    case OP_SHADER_SOURCE: {
+                        final int shader = buffer.getInt();
+                        final String source = readString(buffer);
+
+                        commands.add((backend, handles) -> backend.glShaderSource(
+                                handles.get(handles.mObjects, shader), source));
+                        break;
+                    }
+                    case OP_COMPILE_SHADER: {
+                        final int shader = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glCompileShader(
+                                handles.get(handles.mObjects, shader)));
+                        break;
+                    }
+                    case OP_CREATE_PROGRAM: {
+                        final int program = buffer.getInt();
+
+                        checkNotFrame(frame, opcode);
+                        commands.add((backend, handles) -> handles.mObjects.put(program,
+                                backend.glCreateProgram()));
+                        break;
+                    }
+                    case OP_ATTACH_SHADER: {
+                        final int program = buffer.getInt();
+                        final int shader = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glAttachShader(
+                                handles.get(handles.mObjects, program),
+                                handles.get(handles.mObjects, shader)));
+                        break;
+                    }
+                    case OP_LINK_PROGRAM: {
+                        final int program = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glLinkProgram(
+                                handles.get(handles.mObjects, program)));
+                        break;
+                    }
+                    case OP_GET_PROGRAM: {
+                        final int program = buffer.getInt();
+                        final int name = buffer.getInt();
+
+                        buffer.getInt();
+
+                        if (!frame) {
+                            commands.add((backend, handles) -> backend.glGetProgram(
+                                    handles.get(handles.mObjects, program), name));
+                        }
+                        break;
+                    }
+                    case OP_USE_PROGRAM: {
+                        final int program = buffer.getInt();
+
+                        uniforms.clear();
+                        commands.add((backend, handles) -> backend.glUseProgram(
+                                handles.get(handles.mObjects, program)));
+                        break;
+                    }
+                    case OP_GET_ATTRIB_LOCATION: {
+                        final int program = buffer.getInt();
+                        final String name = readString(buffer);
+                        final int location = buffer.getInt();
+
+                        if (!frame) {
+                            commands.add((backend, handles) -> handles.mAttributes.put(location,
+                                    backend.glGetAttribLocation(
+                                            handles.get(handles.mObjects, program), name)));
+                        }
+                        break;
+                    }
+                    case OP_ENABLE_VERTEX_ATTRIB_ARRAY: {
+                        final int index = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glEnableVertexAttribArray(
+                                handles.get(handles.mAttributes, index)));
+                        break;
+                    }
+                    case OP_GEN_BUFFER: {
+                        final int bufferHandle = buffer.getInt();
+
+                        checkNotFrame(frame, opcode);
+                        commands.add((backend, handles) -> handles.mBuffers.put(bufferHandle,
+                                backend.glGenBuffer()));
+                        break;
+                    }
+                    case OP_BIND_BUFFER: {
+                        final int target = buffer.getInt();
+                        final int bufferHandle = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glBindBuffer(target,
+                                handles.get(handles.mBuffers, bufferHandle)));
+                        break;
+                    }
+                    case OP_BUFFER_DATA: {
+                        final int target = buffer.getInt();
+                        final float[] data = readFloats(buffer);
+                        final int usage = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glBufferData(target, data,
+                                usage));
+                        break;
+                    }
+                    case OP_CLEAR_COLOR: {
+                        final float red = buffer.getFloat();
+                        final float green = buffer.getFloat();
+                        final float blue = buffer.getFloat();
+                        final float alpha = buffer.getFloat();
+
+                        commands.add((backend, handles) -> backend.glClearColor(red, green, blue,
+                                alpha));
+                        break;
+                    }
+                    case OP_ENABLE: {
+                        final int capability = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glEnable(capability));
+                        break;
+                    }
+                    case OP_CLEAR: {
+                        final int mask = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glClear(mask));
+                        break;
+                    }
+                    case OP_VERTEX_ATTRIB_POINTER: {
+                        final int index = buffer.getInt();
+                        final int size = buffer.getInt();
+                        final int type = buffer.getInt();
+                        final boolean normalized = buffer.get() != 0;
+                        final int stride = buffer.getInt();
+                        final int offset = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glVertexAttribPointer(
+                                handles.get(handles.mAttributes, index), size, type, normalized,
+                                stride, offset));
+                        break;
+                    }
+                    case OP_GET_UNIFORM_LOCATION: {
+                        final int program = buffer.getInt();
+                        final String name = readString(buffer);
+                        final int location = buffer.getInt();
+
+                        if (!frame) {
+                            commands.add((backend, handles) -> handles.mUniforms.put(location,
+                                    backend.glGetUniformLocation(
+                                            handles.get(handles.mObjects, program), name)));
+                        }
+                        break;
+                    }
+                    case OP_UNIFORM_MATRIX4FV: {
+                        final int location = buffer.getInt();
+                        final float[] matrix = readFloats(buffer);
+
+                        if (frame && Arrays.equals(uniforms.put(location, matrix), matrix)) {
+                            break;
+                        }
+
+                        commands.add((backend, handles) -> backend.glUniformMatrix4fv(
+                                handles.get(handles.mUniforms, location), matrix));
+                        break;
+                    }
+                    case OP_DRAW_ARRAYS: {
+                        final int mode = buffer.getInt();
+                        final int first = buffer.getInt();
+                        final int count = buffer.getInt();
+
+                        commands.add((backend, handles) -> backend.glDrawArrays(mode, first,
+                                count));
+                        break;
+                    }
+                    case OP_DRAW_ELEMENTS: {
+                        final int mode = buffer.getInt();
+                        final short[] indices = new short[readLength(buffer,
+                                Short.SIZE / Byte.SIZE)];
+
+                        buffer.asShortBuffer().get(indices);
+                        buffer.position(buffer.position() + indices.length * Short.SIZE
+                                / Byte.SIZE);
+
+                        commands.add((backend, handles) -> backend.glDrawElements(mode,
+                                indices));
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unknown opcode " + opcode);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated command buffer", e);
+        }
+
+        return commands;
+    }
+
+    /**
+     * Throws if an object creation command is found while decoding a steady-state frame.
+     *
+     * @param frame  whether a steady-state frame is being decoded.
+     * @param opcode the opcode of the command.
+     */
+    private static void checkNotFrame(boolean frame, int opcode) {
+        if (frame) {
+            throw new IllegalArgumentException("Frames can't create objects, opcode " + opcode);
+        }
+    }
+
+    /**
+     * Decodes a string encoded as UTF-8, preceded by its length in bytes.
+     *
+     * @param buffer the encoded commands.
+     * @return the string.
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readLength(buffer, 1)];
+
+        buffer.get(bytes);
+
+        return new String(bytes, Charset.forName(CHARSET));
+    }
+
+    /**
+     * Decodes the length of an array, checking the encoded commands have room for its elements
+     * before the array is allocated.
+     *
+     * @param buffer      the encoded commands.
+     * @param elementSize the size of each element, in bytes.
+     * @return the number of elements.
+     * @throws IllegalArgumentException if the length is negative or exceeds the remaining bytes.
+     */
+    private static int readLength(ByteBuffer buffer, int elementSize) {
+        int length = buffer.getInt();
+
+        if ((length < 0) || (length > buffer.remaining() / elementSize)) {
+            throw new IllegalArgumentException("Invalid array length " + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Decodes a float array, preceded by its length.
+     *
+     * @param buffer the encoded commands.
+     * @return the float array.
+     */
+    private static float[] readFloats(ByteBuffer buffer) {
+        float[] values = new float[readLength(buffer, Float.SIZE / Byte.SIZE)];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getFloat();
+        }
+
+        return values;
+    }
+
+    /**
+     * A decoded command.
+     */
+    private interface Command {
+        /**
+         * Issues the command.
+         *
+         * @param backend the backend the command is issued to.
+         * @param handles the translation of the recorded handles and locations.
+         */
+        void execute(GLBackend backend, Handles handles);
+    }
+
+    /**
+     * Translation of the recorded handles and locations into the ones of the backend the commands
+     * are replayed on. Values without translation are used as recorded.
+     */
+    private static final class Handles {
+        /**
+         * Shader and program handles.
+         */
+        private final Map<Integer, Integer> mObjects = new HashMap<>();
+
+        /**
+         * Buffer handles.
+         */
+        private final Map<Integer, Integer> mBuffers = new HashMap<>();
+
+        /**
+         * Attribute locations.
+         */
+        private final Map<Integer, Integer> mAttributes = new HashMap<>();
+
+        /**
+         * Uniform locations.
+         */
+        private final Map<Integer, Integer> mUniforms = new HashMap<>();
+
+        /**
+         * Translates a recorded value.
+         *
+         * @param translations the translations of the value kind.
+         * @param recorded     the recorded value.
+         * @return the translated value.
+         */
+        private int get(Map<Integer, Integer> translations, int recorded) {
+            Integer translated = translations.get(recorded);
+
+            return (translated != null) ? translated : recorded;
+        }
+    }
+
+    /**
+     * A steady-state frame prepared by {@link #prepare()}, executed on the context it was recorded
+     * on.
+     */
+    static final class Frame {
+        /**
+         * The identity translation, since the frame runs on the context it was recorded on.
+         */
+        private final Handles mHandles = new Handles();
+
+        /**
+         * The commands of the frame.
+         */
+        private final Command[] mCommands;
+
+        /**
+         * Constructor.
+         *
+         * @param commands the commands of the frame.
+         */
+        private Frame(Command[] commands) {
+            this.mCommands = commands;
+        }
+
+        /**
+         * Returns the number of calls issued by each execution of the frame.
+         *
+         * @return the number of calls.
+         */
+        int size() {
+            return mCommands.length;
+        }
+
+        /**
+         * Executes the frame.
+         *
+         * @param backend the backend the commands are issued to.
+         */
+        void execute(GLBackend backend) {
+            for (Command command : mCommands) {
+                command.execute(backend, mHandles);
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package br.org.eldorado.gpufingerprint;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * {@link GLBackend} which forwards every call to another backend and encodes it, with the values
+ * the call returned, into a {@link GLCommandBuffer}.
+ */
+final class GLCommandRecorder implements GLBackend {
+    /**
+     * The backend the calls are forwarded to.
+     */
+    private final GLBackend mBackend;
+
+    /**
+     * The encoded commands.
+     */
+    private final ByteArrayOutputStream mCommands = new ByteArrayOutputStream();
+
+    /**
+     * Constructor.
+     *
+     * @param backend the backend the calls are forwarded to.
+     */
+    GLCommandRecorder(GLBackend backend) {
+        this.mBackend = backend;
+    }
+
+    /**
+     * Returns the position of the next recorded command, to be given to
+     * {@link #getCommands(int)}.
+     *
+     * @return the position of the next command.
+     */
+    int mark() {
+        return mCommands.size();
+    }
+
+    /**
+     * Returns every command recorded so far.
+     *
+     * @return the recorded commands.
+     */
+    GLCommandBuffer getCommands() {
+        return getCommands(0);
+    }
+
+    /**
+     * Returns the commands recorded since a mark.
+     *
+     * @param mark the position returned by {@link #mark()}.
+     * @return the recorded commands.
+     */
+    GLCommandBuffer getCommands(int mark) {
+        byte[] commands = mCommands.toByteArray();
+
+        return new GLCommandBuffer(Arrays.copyOfRange(commands, mark, commands.length));
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        int shader = mBackend.glCreateShader(type);
+
+        writeOpcode(GLCommandBuffer.OP_CREATE_SHADER);
+        writeInt(type);
+        writeInt(shader);
+
+        return shader;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        mBackend.glShaderSource(shader, source);
+
+        writeOpcode(GLCommandBuffer.OP_SHADER_SOURCE);
+        writeInt(shader);
+        writeString(source);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        mBackend.glCompileShader(shader);
+
+        writeOpcode(GLCommandBuffer.OP_COMPILE_SHADER);
+        writeInt(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        int program = mBackend.glCreateProgram();
+
+        writeOpcode(GLCommandBuffer.OP_CREATE_PROGRAM);
+        writeInt(program);
+
+        return program;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        mBackend.glAttachShader(program, shader);
+
+        writeOpcode(GLCommandBuffer.OP_ATTACH_SHADER);
+        writeInt(program);
+        writeInt(shader);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        mBackend.glLinkProgram(program);
+
+        writeOpcode(GLCommandBuffer.OP_LINK_PROGRAM);
+        writeInt(program);
+    }
+
+    @Override
+    public int glGetProgram(int program, int name) {
+        int value = mBackend.glGetProgram(program, name);
+
+        writeOpcode(GLCommandBuffer.OP_GET_PROGRAM);
+        writeInt(program);
+        writeInt(name);
+        writeInt(value);
+
+        return value;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        mBackend.glUseProgram(program);
+
+        writeOpcode(GLCommandBuffer.OP_USE_PROGRAM);
+        writeInt(program);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        int location = mBackend.glGetAttribLocation(program, name);
+
+        writeOpcode(GLCommandBuffer.OP_GET_ATTRIB_LOCATION);
+        writeInt(program);
+        writeString(name);
+        writeInt(location);
+
+        return location;
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        mBackend.glEnableVertexAttribArray(index);
+
+        writeOpcode(GLCommandBuffer.OP_ENABLE_VERTEX_ATTRIB_ARRAY);
+        writeInt(index);
+    }
+
+    @Override
+    public int glGenBuffer() {
+        int buffer = mBackend.glGenBuffer();
+
+        writeOpcode(GLCommandBuffer.OP_GEN_BUFFER);
+        writeInt(buffer);
+
+        return buffer;
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        mBackend.glBindBuffer(target, buffer);
+
+        writeOpcode(GLCommandBuffer.OP_BIND_BUFFER);
+        writeInt(target);
+        writeInt(buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, float[] data, int usage) {
+        mBackend.glBufferData(target, data, usage);
+
+        writeOpcode(GLCommandBuffer.OP_BUFFER_DATA);
+        writeInt(target);
+        writeFloats(data);
+        writeInt(usage);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        mBackend.glClearColor(red, green, blue, alpha);
+
+        writeOpcode(GLCommandBuffer.OP_CLEAR_COLOR);
+        writeFloat(red);
+        writeFloat(green);
+        writeFloat(blue);
+        writeFloat(alpha);
+    }
+
+    @Override
+    public void glEnable(int capability) {
+        mBackend.glEnable(capability);
+
+        writeOpcode(GLCommandBuffer.OP_ENABLE);
+        writeInt(capability);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        mBackend.glClear(mask);
+
+        writeOpcode(GLCommandBuffer.OP_CLEAR);
+        writeInt(mask);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, int offset) {
+        mBackend.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+
+        writeOpcode(GLCommandBuffer.OP_VERTEX_ATTRIB_POINTER);
+        writeInt(index);
+        writeInt(size);
+        writeInt(type);
+        mCommands.write(normalized ? 1 : 0);
+        writeInt(stride);
+        writeInt(offset);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        int location = mBackend.glGetUniformLocation(program, name);
+
+        writeOpcode(GLCommandBuffer.OP_GET_UNIFORM_LOCATION);
+        writeInt(program);
+        writeString(name);
+        writeInt(location);
+
+        return location;
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, float[] matrix) {
+        mBackend.glUniformMatrix4fv(location, matrix);
+
+        writeOpcode(GLCommandBuffer.OP_UNIFORM_MATRIX4FV);
+        writeInt(location);
+        writeFloats(matrix);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        mBackend.glDrawArrays(mode, first, count);
+
+        writeOpcode(GLCommandBuffer.OP_DRAW_ARRAYS);
+        writeInt(mode);
+        writeInt(first);
+        writeInt(count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, short[] indices) {
+        mBackend.glDrawElements(mode, indices);
+
+        writeOpcode(GLCommandBuffer.OP_DRAW_ELEMENTS);
+        writeInt(mode);
+        writeInt(indices.length);
+
+        for (short index : indices) {
+            mCommands.write(index >>> Byte.SIZE);
+            mCommands.write(index);
+        }
+    }
+
+    /**
+     * Encodes an opcode.
+     *
+     * @param opcode the opcode.
+     */
+    private void writeOpcode(int opcode) {
+        mCommands.write(opcode);
+    }
+
+    /**
+     * Encodes a big-endian int.
+     *
+     * @param value the value.
+     */
+    private void writeInt(int value) {
+        mCommands.write(value >>> 24);
+        mCommands.write(value >>> 16);
+        mCommands.write(value >>> 8);
+        mCommands.write(value);
+    }
+
+    /**
+     * Encodes a float as the big-endian int of its bits.
+     *
+     * @param value the value.
+     */
+    private void writeFloat(float value) {
+        writeInt(Float.floatToIntBits(value));
+    }
+
+    /**
+     * Encodes a float array, preceded by its length.
+     *
+     * @param values the values.
+     */
+    private void writeFloats(float[] values) {
+        writeInt(values.length);
+
+        for (float value : values) {
+            writeFloat(value);
+        }
+    }
+
+    /**
+     * Encodes a string as UTF-8, preceded by its length in bytes.
+     *
+     * @param value the value.
+     */
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(Charset.forName(GLCommandBuffer.CHARSET));
+
+        writeInt(bytes.length);
+        mCommands.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,127 @@
+package br.org.eldorado.gpufingerprint;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * {@link GLBackend} issuing the calls to the OpenGL context current on the calling thread.
+ */
+final class GLES20Backend implements GLBackend {
+    @Override
+    public int glCreateShader(int type) {
+        return GLES20.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        GLES20.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        GLES20.glCompileShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        GLES20.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        GLES20.glLinkProgram(program);
+    }
+
+    @Override
+    public int glGetProgram(int program, int name) {
+        int[] value = new int[1];
+
+        GLES20.glGetProgramiv(program, name, value, 0);
+
+        return value[0];
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public int glGenBuffer() {
+        int[] buffer = new int[1];
+
+        GLES20.glGenBuffers(1, buffer, 0);
+
+        return buffer[0];
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, float[] data, int usage) {
+        GLES20.glBufferData(target, data.length * Float.SIZE / Byte.SIZE, FloatBuffer.wrap(data),
+                usage);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        GLES20.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glEnable(int capability) {
+        GLES20.glEnable(capability);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        GLES20.glClear(mask);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, int offset) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, float[] matrix) {
+        GLES20.glUniformMatrix4fv(location, 1, false, matrix, 0);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, short[] indices) {
+        GLES20.glDrawElements(mode, indices.length, GLES20.GL_UNSIGNED_SHORT,
+                ShortBuffer.wrap(indices));
+    }
+}
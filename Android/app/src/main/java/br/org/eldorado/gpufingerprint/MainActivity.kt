@@ -30,6 +30,16 @@ class MainActivity : AppCompatActivity() {
         create_images_button.setOnClickListener {
             launchGenerateImages()
         }
+
+        OpenGLPreWarmer.schedule { createPixelBuffer() }
+    }
+
+    override fun onDestroy() {
+        if (isFinishing) {
+            OpenGLPreWarmer.release()
+        }
+
+        super.onDestroy()
     }
 
     override fun onStop() {
@@ -60,18 +70,28 @@ class MainActivity : AppCompatActivity() {
     }
 
     private fun generateImageAndSaveData() {
-        val pixelBuffer = OpenGLPixelBuffer(SAMPLE_IMAGE_WIDTH,
-                SAMPLE_IMAGE_HEIGHT, OpenGLContextFactory(),
-                OpenGLConfigChooser(COLOR_CHANNEL_BIT_SIZE, COLOR_CHANNEL_BIT_SIZE,
-                        COLOR_CHANNEL_BIT_SIZE, COLOR_CHANNEL_BIT_SIZE, 0, 0))
-
-        pixelBuffer.setRenderer(OpenGLRenderer())
-        val bitmap = pixelBuffer.bitmap
-        val bitmapBytes = getBitmapBytes(bitmap)
-        val bitmapHash = getBitmapHash(bitmapBytes)
+        val pixelBuffer = OpenGLPreWarmer.acquire { createPixelBuffer() }
+        val preWarmed = pixelBuffer.isPreWarmed
+        val features = if (GPU_REDUCTION_ENABLED) pixelBuffer.features else null
+        val bitmapHash = if (features != null) {
+            getBitmapHash(features)
+        } else {
+            getBitmapHash(getBitmapBytes(pixelBuffer.bitmap))
+        }
+        val glCommands = (pixelBuffer.renderer as? OpenGLRenderer)?.commandBuffer?.serialize()
         val gpuName = GLES20.glGetString(GLES20.GL_RENDERER)
         val gpuVendor = GLES20.glGetString(GLES20.GL_VENDOR)
         val openGLVersion = GLES20.glGetString(GLES20.GL_VERSION)
+        val sweepHashes = if (CONFIG_SWEEP_ENABLED) {
+            pixelBuffer.sweepConfigs(OpenGLConfigSweep(SAMPLE_IMAGE_WIDTH, SAMPLE_IMAGE_HEIGHT,
+                    OpenGLContextFactory()))
+                    .map { (configClass, sweepFeatures) ->
+                        configClass.name to getBitmapHash(sweepFeatures)
+                    }
+                    .toMap()
+        } else {
+            null
+        }
         pixelBuffer.destroy()
 
 
@@ -87,6 +107,17 @@ class MainActivity : AppCompatActivity() {
         deviceReference.child("gpuVendor").setValue(gpuVendor)
         deviceReference.child("openGLVersion").setValue(openGLVersion)
         deviceReference.child("hash").setValue(bitmapHash)
+        deviceReference.child("hashMethod").setValue(if (features != null) "reduction" else "png")
+        features?.let {
+            deviceReference.child("features").setValue(Base64.encodeToString(it,
+                    Base64.URL_SAFE or Base64.NO_WRAP or Base64.NO_PADDING))
+        }
+        glCommands?.let {
+            deviceReference.child("glCommands").setValue(Base64.encodeToString(it,
+                    Base64.URL_SAFE or Base64.NO_WRAP or Base64.NO_PADDING))
+        }
+        sweepHashes?.let { deviceReference.child("sweepHashes").setValue(it) }
+        deviceReference.child("preWarmed").setValue(preWarmed)
     }
 
     private fun getBitmapBytes(bitmap: Bitmap): ByteArray {
@@ -116,5 +147,34 @@ class MainActivity : AppCompatActivity() {
         private const val SAMPLE_IMAGE_HEIGHT = 250
 
         private const val SAMPLE_IMAGE_PNG_QUALITY = 100
+
+        /**
+         * Whether the image is reduced on the GPU and only its feature vector is read back and
+         * hashed, instead of the whole image. Kept off, so no record has a "reduction" hash
+         * method, until OpenGLReductionPassTest passes on the devices of the fleet.
+         */
+        private const val GPU_REDUCTION_ENABLED = false
+
+        /**
+         * Whether the image is also drawn under every [OpenGLConfigClass] supported by the device,
+         * adding one hash per configuration class to the fingerprint.
+         */
+        private const val CONFIG_SWEEP_ENABLED = false
+
+        private val configChooser = OpenGLConfigChooser(COLOR_CHANNEL_BIT_SIZE,
+                COLOR_CHANNEL_BIT_SIZE, COLOR_CHANNEL_BIT_SIZE, COLOR_CHANNEL_BIT_SIZE, 0, 0)
+
+        /**
+         * Creates the pixel buffer used to capture the fingerprint image, with the program of the
+         * renderer already compiled.
+         */
+        internal fun createPixelBuffer(): OpenGLPixelBuffer {
+            val pixelBuffer = OpenGLPixelBuffer(SAMPLE_IMAGE_WIDTH, SAMPLE_IMAGE_HEIGHT,
+                    OpenGLContextFactory(), configChooser)
+
+            pixelBuffer.setRenderer(OpenGLRenderer())
+
+            return pixelBuffer
+        }
     }
 }
\ No newline at end of file
@@ -26,6 +26,12 @@ final class OpenGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
      */
     private static final int[] ANTI_ALIASING_LEVELS = {4, 2};
 
+    /**
+     * Sample count which lets the chooser try each of {@link #ANTI_ALIASING_LEVELS} before falling
+     * back to no anti-aliasing.
+     */
+    static final int ANY_SAMPLES = -1;
+
     /**
      * The desired size of the red component of the color buffer, in bits.
      */
@@ -56,6 +62,22 @@ final class OpenGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
      */
     private final int mStencilSize;
 
+    /**
+     * The exact number of samples per pixel or {@link #ANY_SAMPLES}.
+     */
+    private final int mSamples;
+
+    /**
+     * The display for which {@link #mChosenConfig} was chosen.
+     */
+    private EGLDisplay mChosenDisplay;
+
+    /**
+     * The memoised configuration chosen for {@link #mChosenDisplay}, so the configurations are
+     * enumerated only once per display.
+     */
+    private EGLConfig mChosenConfig;
+
     /**
      * Constructor.
      *
@@ -68,21 +90,67 @@ final class OpenGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
      */
     OpenGLConfigChooser(int redSize, int greenSize, int blueSize, int alphaSize, int depthSize,
                         int stencilSize) {
+        this(redSize, greenSize, blueSize, alphaSize, depthSize, stencilSize, ANY_SAMPLES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param redSize     the desired size of the red component of the color buffer, in bits.
+     * @param greenSize   the desired size of the green component of the color buffer, in bits.
+     * @param blueSize    the desired size of the blue component of the color buffer, in bits.
+     * @param alphaSize   the desired size of the alpha component of the color buffer, in bits.
+     * @param depthSize   the desired color depth size, in bits.
+     * @param stencilSize the desired stencil size, in bits.
+     * @param samples     the exact number of samples per pixel, zero for no anti-aliasing, or
+     *                    {@link #ANY_SAMPLES}.
+     */
+    OpenGLConfigChooser(int redSize, int greenSize, int blueSize, int alphaSize, int depthSize,
+                        int stencilSize, int samples) {
         this.mRedSize = redSize;
         this.mGreenSize = greenSize;
         this.mBlueSize = blueSize;
         this.mAlphaSize = alphaSize;
         this.mDepthSize = depthSize;
         this.mStencilSize = stencilSize;
+        this.mSamples = samples;
     }
 
     @Override
-    public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+    public synchronized EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+        if ((mChosenConfig == null) || !display.equals(mChosenDisplay)) {
+            mChosenConfig = findConfig(egl, display);
+            mChosenDisplay = display;
+        }
+
+        return mChosenConfig;
+    }
+
+    /**
+     * Enumerates the OpenGL configurations of the given display and picks the one matching the
+     * desired sizes.
+     *
+     * @param egl     the Khronos rendering API interface instance.
+     * @param display the OpenGL display instance.
+     * @return the matching configuration or null if none could be found.
+     */
+    private EGLConfig findConfig(EGL10 egl, EGLDisplay display) {
         EGLConfig config = null;
         int[] numConfigs = new int[1];
         int[] attributes = null;
 
-        for (int i = 0; (i < ANTI_ALIASING_LEVELS.length) && (numConfigs[0] == 0); i++) {
+        if (mSamples != ANY_SAMPLES) {
+            attributes = new int[]{EGL10.EGL_RED_SIZE, MINIMUM_COLOR_CHANNEL_SIZE,
+                    EGL10.EGL_GREEN_SIZE, MINIMUM_COLOR_CHANNEL_SIZE, EGL10.EGL_BLUE_SIZE,
+                    MINIMUM_COLOR_CHANNEL_SIZE, EGL10.EGL_RENDERABLE_TYPE, EGL_OPEN_GL_ES2_BIT,
+                    EGL10.EGL_SAMPLES, mSamples, EGL10.EGL_SAMPLE_BUFFERS, (mSamples > 0) ? 1 : 0,
+                    EGL10.EGL_NONE};
+
+            egl.eglChooseConfig(display, attributes, null, 0, numConfigs);
+        }
+
+        for (int i = 0; (mSamples == ANY_SAMPLES) && (i < ANTI_ALIASING_LEVELS.length)
+                && (numConfigs[0] == 0); i++) {
             attributes = new int[]{EGL10.EGL_RED_SIZE, MINIMUM_COLOR_CHANNEL_SIZE,
                     EGL10.EGL_GREEN_SIZE, MINIMUM_COLOR_CHANNEL_SIZE, EGL10.EGL_BLUE_SIZE,
                     MINIMUM_COLOR_CHANNEL_SIZE, EGL10.EGL_RENDERABLE_TYPE, EGL_OPEN_GL_ES2_BIT,
@@ -92,7 +160,7 @@ final class OpenGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
             egl.eglChooseConfig(display, attributes, null, 0, numConfigs);
         }
 
-        if (numConfigs[0] == 0) {
+        if ((mSamples == ANY_SAMPLES) && (numConfigs[0] == 0)) {
             attributes = new int[]{EGL10.EGL_RED_SIZE, MINIMUM_COLOR_CHANNEL_SIZE,
                     EGL10.EGL_GREEN_SIZE, MINIMUM_COLOR_CHANNEL_SIZE, EGL10.EGL_BLUE_SIZE,
                     MINIMUM_COLOR_CHANNEL_SIZE, EGL10.EGL_RENDERABLE_TYPE, EGL_OPEN_GL_ES2_BIT,
@@ -112,6 +180,7 @@ final class OpenGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
             int[] greenSize = new int[1];
             int[] blueSize = new int[1];
             int[] alphaSize = new int[1];
+            int[] samples = new int[1];
 
             for (int i = 0; (i < allConfigs.length) && (config == null); i++) {
                 EGLConfig currentConfig = allConfigs[i];
@@ -125,8 +194,11 @@ final class OpenGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
                     egl.eglGetConfigAttrib(display, currentConfig, EGL10.EGL_BLUE_SIZE, blueSize);
                     egl.eglGetConfigAttrib(display, currentConfig, EGL10.EGL_ALPHA_SIZE, alphaSize);
 
+                    egl.eglGetConfigAttrib(display, currentConfig, EGL10.EGL_SAMPLES, samples);
+
                     if ((redSize[0] == mRedSize) && (greenSize[0] == mGreenSize)
-                            && (blueSize[0] == mBlueSize) && (alphaSize[0] == mAlphaSize)) {
+                            && (blueSize[0] == mBlueSize) && (alphaSize[0] == mAlphaSize)
+                            && ((mSamples == ANY_SAMPLES) || (samples[0] == mSamples))) {
                         config = currentConfig;
                     }
                 }
@@ -0,0 +1,85 @@
+package br.org.eldorado.gpufingerprint;
+
+/**
+ * Classes of OpenGL configurations swept by {@link OpenGLConfigSweep}. Drivers usually take a
+ * different rasterization or dithering path for each of them, so each one contributes its own
+ * component to the fingerprint.
+ */
+enum OpenGLConfigClass {
+    /**
+     * 32-bit color without anti-aliasing.
+     */
+    RGBA8888(8, 8, 8, 8, 0),
+
+    /**
+     * 32-bit color with 2x multisample anti-aliasing.
+     */
+    RGBA8888_MSAA_2X(8, 8, 8, 8, 2),
+
+    /**
+     * 32-bit color with 4x multisample anti-aliasing.
+     */
+    RGBA8888_MSAA_4X(8, 8, 8, 8, 4),
+
+    /**
+     * 24-bit color without alpha nor anti-aliasing.
+     */
+    RGB888(8, 8, 8, 0, 0),
+
+    /**
+     * 16-bit color without anti-aliasing.
+     */
+    RGB565(5, 6, 5, 0, 0);
+
+    /**
+     * The size of the red component of the color buffer, in bits.
+     */
+    private final int mRedSize;
+
+    /**
+     * The size of the green component of the color buffer, in bits.
+     */
+    private final int mGreenSize;
+
+    /**
+     * The size of the blue component of the color buffer, in bits.
+     */
+    private final int mBlueSize;
+
+    /**
+     * The size of the alpha component of the color buffer, in bits.
+     */
+    private final int mAlphaSize;
+
+    /**
+     * The number of samples per pixel.
+     */
+    private final int mSamples;
+
+    /**
+     * Constructor.
+     *
+     * @param redSize   the size of the red component of the color buffer, in bits.
+     * @param greenSize the size of the green component of the color buffer, in bits.
+     * @param blueSize  the size of the blue component of the color buffer, in bits.
+     * @param alphaSize the size of the alpha component of the color buffer, in bits.
+     * @param samples   the number of samples per pixel.
+     */
+    OpenGLConfigClass(int redSize, int greenSize, int blueSize, int alphaSize, int samples) {
+        this.mRedSize = redSize;
+        this.mGreenSize = greenSize;
+        this.mBlueSize = blueSize;
+        this.mAlphaSize = alphaSize;
+        this.mSamples = samples;
+    }
+
+    /**
+     * Creates a chooser of the OpenGL configuration of this class.
+     *
+     * @return the configuration chooser.
+     */
+    OpenGLConfigChooser createChooser() {
+        return new OpenGLConfigChooser(mRedSize, mGreenSize, mBlueSize, mAlphaSize, 0, 0,
+                mSamples);
+    }
+}
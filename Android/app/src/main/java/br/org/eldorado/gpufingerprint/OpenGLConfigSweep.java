@@ -0,0 +1,322 @@
+package br.org.eldorado.gpufingerprint;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * Draws the fingerprint image once under each {@link OpenGLConfigClass} supported by the device,
+ * within the display session of the capture, and reduces every image into the feature vector
+ * described by {@link FingerprintReducer}.
+ * <p>
+ * Every pixel buffer surface is created upfront, each with a context of its own configuration,
+ * since a context can only be made current with surfaces of a compatible configuration. The
+ * contexts belong to the share group of the capture context, and the display is neither
+ * initialized nor terminated by the sweep. The programs, buffers and textures of the capture
+ * renderer and reduction pass are created once, on the capture context: each sweep context only
+ * sets its own state up to use them and creates the framebuffer of its reduction, which contexts
+ * can't share. All surfaces are drawn before any of them is reduced, so the GPU works through the
+ * draws while the first reductions wait for their results.
+ */
+final class OpenGLConfigSweep {
+    /**
+     * The image width.
+     */
+    private final int mWidth;
+
+    /**
+     * The image height.
+     */
+    private final int mHeight;
+
+    /**
+     * The OpenGL context factory instance.
+     */
+    private final OpenGLContextFactory mContextFactory;
+
+    /**
+     * Constructor.
+     *
+     * @param width          the image width.
+     * @param height         the image height.
+     * @param contextFactory the OpenGL context factory instance.
+     */
+    OpenGLConfigSweep(int width, int height, OpenGLContextFactory contextFactory) {
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mContextFactory = contextFactory;
+    }
+
+    /**
+     * Runs the sweep. No context is current on the calling thread once it returns.
+     *
+     * @param egl           the Khronos rendering API interface instance.
+     * @param display       the initialized OpenGL display instance.
+     * @param shareContext  the capture context, whose objects are shared by the sweep contexts.
+     * @param renderer      the renderer set up on the capture context.
+     * @param reductionPass the reduction pass prepared on the capture context.
+     * @return the feature vector of each configuration class, in declaration order. Classes the
+     * device has no configuration for, or whose image couldn't be reduced, are left out.
+     */
+    Map<OpenGLConfigClass, byte[]> run(EGL10 egl, EGLDisplay display, EGLContext shareContext,
+                                       OpenGLRenderer renderer,
+                                       OpenGLReductionPass reductionPass) {
+        List<Surface> surfaces = new ArrayList<>();
+
+        try {
+            int[] attributesList = new int[]{EGL10.EGL_WIDTH, mWidth, EGL10.EGL_HEIGHT, mHeight,
+                    EGL10.EGL_NONE};
+
+            for (OpenGLConfigClass configClass : OpenGLConfigClass.values()) {
+                EGLConfig config = configClass.createChooser().chooseConfig(egl, display);
+
+                if (config == null) {
+                    continue;
+                }
+
+                EGLSurface eglSurface = egl.eglCreatePbufferSurface(display, config,
+                        attributesList);
+
+                if ((eglSurface == null) || (eglSurface == EGL10.EGL_NO_SURFACE)) {
+                    continue;
+                }
+
+                EGLContext eglContext = mContextFactory.createContext(egl, display, config,
+                        shareContext);
+
+                if (eglContext == EGL10.EGL_NO_CONTEXT) {
+                    eglContext = null;
+                }
+
+                Surface surface = new Surface(configClass, mWidth, mHeight, egl, display,
+                        eglSurface, eglContext, renderer, reductionPass);
+
+                surfaces.add(surface);
+                surface.prepare();
+            }
+
+            return drawAndReduce(surfaces);
+        } finally {
+            // Framebuffers belong to the context they were created on, so each one is deleted
+            // there before the context is destroyed.
+            for (Surface surface : surfaces) {
+                surface.release();
+            }
+
+            egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
+                    EGL10.EGL_NO_CONTEXT);
+
+            for (Surface surface : surfaces) {
+                egl.eglDestroySurface(display, surface.mEGLSurface);
+
+                if (surface.mEGLContext != null) {
+                    mContextFactory.destroyContext(egl, display, surface.mEGLContext);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws every target which can be made current, then reduces the drawn ones.
+     *
+     * @param targets the targets, one per configuration class.
+     * @return the feature vector of each configuration class, in declaration order. Targets which
+     * couldn't be made current, or whose image couldn't be reduced, are left out.
+     */
+    static Map<OpenGLConfigClass, byte[]> drawAndReduce(List<? extends Target> targets) {
+        List<Target> drawn = new ArrayList<>(targets.size());
+        Map<OpenGLConfigClass, byte[]> features = new EnumMap<>(OpenGLConfigClass.class);
+
+        for (Target target : targets) {
+            if (target.makeCurrent()) {
+                target.draw();
+                drawn.add(target);
+            }
+        }
+
+        for (Target target : drawn) {
+            if (target.makeCurrent()) {
+                byte[] targetFeatures = target.reduce();
+
+                if (targetFeatures != null) {
+                    features.put(target.getConfigClass(), targetFeatures);
+                }
+            }
+        }
+
+        return features;
+    }
+
+    /**
+     * Surface of a configuration class drawn by the sweep.
+     */
+    interface Target {
+        /**
+         * Returns the configuration class of the target.
+         *
+         * @return the configuration class.
+         */
+        OpenGLConfigClass getConfigClass();
+
+        /**
+         * Binds the target to the calling thread.
+         *
+         * @return true if the target is current and can be drawn or false otherwise.
+         */
+        boolean makeCurrent();
+
+        /**
+         * Draws the fingerprint image on the target.
+         */
+        void draw();
+
+        /**
+         * Reduces the image drawn on the target.
+         *
+         * @return the feature vector or null if it couldn't be computed.
+         */
+        byte[] reduce();
+    }
+
+    /**
+     * Pixel buffer surface of a configuration class, with its own context in the share group of
+     * the capture context.
+     */
+    private static final class Surface implements Target {
+        /**
+         * The configuration class of the surface.
+         */
+        private final OpenGLConfigClass mConfigClass;
+
+        /**
+         * The image width.
+         */
+        private final int mWidth;
+
+        /**
+         * The image height.
+         */
+        private final int mHeight;
+
+        /**
+         * The Khronos rendering API interface instance.
+         */
+        private final EGL10 mEGL;
+
+        /**
+         * The OpenGL display instance.
+         */
+        private final EGLDisplay mEGLDisplay;
+
+        /**
+         * The OpenGL surface instance where the image is drawn.
+         */
+        private final EGLSurface mEGLSurface;
+
+        /**
+         * The context the surface is drawn with or null if none could be created.
+         */
+        private final EGLContext mEGLContext;
+
+        /**
+         * The OpenGL interface instance.
+         */
+        private final GL10 mGL;
+
+        /**
+         * The renderer of the capture context, which draws the fingerprint image.
+         */
+        private final OpenGLRenderer mRenderer;
+
+        /**
+         * The pass which reduces the drawn image with the resources of the capture pass.
+         */
+        private final OpenGLReductionPass mReductionPass;
+
+        /**
+         * Flag which indicates whether the context was set up to draw with the renderer, so the
+         * surface can be drawn.
+         */
+        private boolean mPrepared;
+
+        /**
+         * Constructor.
+         *
+         * @param configClass   the configuration class of the surface.
+         * @param width         the image width.
+         * @param height        the image height.
+         * @param egl           the Khronos rendering API interface instance.
+         * @param display       the OpenGL display instance.
+         * @param eglSurface    the OpenGL surface instance where the image is drawn.
+         * @param eglContext    the context the surface is drawn with or null if none could be
+         *                      created.
+         * @param renderer      the renderer set up on the capture context.
+         * @param reductionPass the reduction pass prepared on the capture context.
+         */
+        Surface(OpenGLConfigClass configClass, int width, int height, EGL10 egl,
+                EGLDisplay display, EGLSurface eglSurface, EGLContext eglContext,
+                OpenGLRenderer renderer, OpenGLReductionPass reductionPass) {
+            this.mConfigClass = configClass;
+            this.mWidth = width;
+            this.mHeight = height;
+            this.mEGL = egl;
+            this.mEGLDisplay = display;
+            this.mEGLSurface = eglSurface;
+            this.mEGLContext = eglContext;
+            this.mGL = (eglContext != null) ? (GL10) eglContext.getGL() : null;
+            this.mRenderer = renderer;
+            this.mReductionPass = new OpenGLReductionPass(reductionPass);
+        }
+
+        /**
+         * Sets the state of the context up to draw with the objects of the capture context.
+         */
+        void prepare() {
+            if ((mEGLContext != null) && mEGL.eglMakeCurrent(mEGLDisplay, mEGLSurface,
+                    mEGLSurface, mEGLContext)) {
+                GLES20.glViewport(0, 0, mWidth, mHeight);
+                mPrepared = mRenderer.onSharedSurfaceCreated();
+            }
+        }
+
+        /**
+         * Deletes the framebuffer of the reduction pass, on the context of the surface.
+         */
+        void release() {
+            if (makeCurrent()) {
+                mReductionPass.destroy();
+            }
+        }
+
+        @Override
+        public OpenGLConfigClass getConfigClass() {
+            return mConfigClass;
+        }
+
+        @Override
+        public boolean makeCurrent() {
+            return mPrepared && mEGL.eglMakeCurrent(mEGLDisplay, mEGLSurface, mEGLSurface,
+                    mEGLContext);
+        }
+
+        @Override
+        public void draw() {
+            mRenderer.onDrawFrame(mGL);
+        }
+
+        @Override
+        public byte[] reduce() {
+            return mReductionPass.reduce(mWidth, mHeight);
+        }
+    }
+}
@@ -20,9 +20,23 @@ final class OpenGLContextFactory implements GLSurfaceView.EGLContextFactory {
 
     @Override
     public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig) {
+        return createContext(egl, display, eglConfig, EGL10.EGL_NO_CONTEXT);
+    }
+
+    /**
+     * Creates a context sharing the objects of another context, such as programs and buffers.
+     *
+     * @param egl          the Khronos rendering API interface instance.
+     * @param display      the OpenGL display instance.
+     * @param eglConfig    the OpenGL configuration of the context.
+     * @param shareContext the context whose objects are shared or {@link EGL10#EGL_NO_CONTEXT}.
+     * @return the context or {@link EGL10#EGL_NO_CONTEXT} if it couldn't be created.
+     */
+    EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig,
+                             EGLContext shareContext) {
         int[] attributes = new int[]{EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
 
-        return egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attributes);
+        return egl.eglCreateContext(display, eglConfig, shareContext, attributes);
     }
 
     @Override
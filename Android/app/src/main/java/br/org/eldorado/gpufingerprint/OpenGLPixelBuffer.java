@@ -4,6 +4,8 @@ import android.graphics.Bitmap;
 import android.opengl.GLSurfaceView;
 
 import java.nio.IntBuffer;
+import java.util.Collections;
+import java.util.Map;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -62,6 +64,17 @@ final class OpenGLPixelBuffer {
      */
     private GLSurfaceView.Renderer mRenderer;
 
+    /**
+     * The pass which reduces the drawn image on the GPU, created when features are first requested.
+     */
+    private OpenGLReductionPass mReductionPass;
+
+    /**
+     * Flag which indicates whether the pixel buffer was fully prepared by {@link OpenGLPreWarmer}
+     * before it was requested.
+     */
+    private boolean mPreWarmed;
+
     /**
      * Constructor.
      *
@@ -114,6 +127,54 @@ final class OpenGLPixelBuffer {
         }
     }
 
+    /**
+     * Returns the renderer instance used to drawn the image used to identify a mobile device.
+     *
+     * @return the renderer instance or null if none was set.
+     */
+    GLSurfaceView.Renderer getRenderer() {
+        return mRenderer;
+    }
+
+    /**
+     * Binds the OpenGL context and surface of the pixel buffer to the calling thread.
+     *
+     * @return true if the context is current on the calling thread or false otherwise.
+     */
+    boolean makeCurrent() {
+        return !isInvalid() && mEGL.eglMakeCurrent(mEGLDisplay, mEGLSurface, mEGLSurface,
+                mEGLContext);
+    }
+
+    /**
+     * Releases the OpenGL context of the pixel buffer from the calling thread, so it can be made
+     * current on another thread.
+     */
+    void releaseCurrent() {
+        mEGL.eglMakeCurrent(mEGLDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
+                EGL10.EGL_NO_CONTEXT);
+    }
+
+    /**
+     * Returns whether the pixel buffer was fully prepared by {@link OpenGLPreWarmer} before it was
+     * requested.
+     *
+     * @return true if the pixel buffer was pre-warmed or false otherwise.
+     */
+    boolean isPreWarmed() {
+        return mPreWarmed;
+    }
+
+    /**
+     * Sets whether the pixel buffer was fully prepared by {@link OpenGLPreWarmer} before it was
+     * requested.
+     *
+     * @param preWarmed true if the pixel buffer was pre-warmed or false otherwise.
+     */
+    void setPreWarmed(boolean preWarmed) {
+        mPreWarmed = preWarmed;
+    }
+
     /**
      * Extracts the bitmap from the pixel buffer. The bitmap contains the image drawn by the given
      * renderer.
@@ -148,6 +209,60 @@ final class OpenGLPixelBuffer {
         return bitmap;
     }
 
+    /**
+     * Draws the image and reduces it on the GPU, so only the fingerprint feature vector described
+     * by {@link FingerprintReducer} is read back instead of the whole image.
+     *
+     * @return the fingerprint feature vector or null if it couldn't be computed.
+     */
+    byte[] getFeatures() {
+        byte[] features = null;
+
+        if (mRenderer != null) {
+            mRenderer.onDrawFrame(mGL);
+
+            if (mReductionPass == null) {
+                mReductionPass = new OpenGLReductionPass();
+            }
+
+            features = mReductionPass.reduce(mWidth, mHeight);
+        }
+
+        return features;
+    }
+
+    /**
+     * Runs a configuration sweep on the display of the pixel buffer, with contexts sharing the
+     * renderer and reduction pass objects of its context, and binds the pixel buffer to the
+     * calling thread again. The pixel buffer must be current on the calling thread.
+     *
+     * @param sweep the configuration sweep.
+     * @return the feature vector of each configuration class, as returned by
+     * {@link OpenGLConfigSweep#run(EGL10, EGLDisplay, EGLContext, OpenGLRenderer,
+     * OpenGLReductionPass)}, or an empty map if the pixel buffer has no {@link OpenGLRenderer}
+     * or can't reduce its images.
+     */
+    Map<OpenGLConfigClass, byte[]> sweepConfigs(OpenGLConfigSweep sweep) {
+        if (isInvalid() || !(mRenderer instanceof OpenGLRenderer)) {
+            return Collections.emptyMap();
+        }
+
+        if (mReductionPass == null) {
+            mReductionPass = new OpenGLReductionPass();
+        }
+
+        if (!mReductionPass.prepare()) {
+            return Collections.emptyMap();
+        }
+
+        Map<OpenGLConfigClass, byte[]> features = sweep.run(mEGL, mEGLDisplay, mEGLContext,
+                (OpenGLRenderer) mRenderer, mReductionPass);
+
+        makeCurrent();
+
+        return features;
+    }
+
     /**
      * Destroys the pixel buffer.
      */
@@ -156,10 +271,25 @@ final class OpenGLPixelBuffer {
             mRenderer.onDrawFrame(mGL);
         }
 
-        mEGL.eglMakeCurrent(mEGLDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
-                EGL10.EGL_NO_CONTEXT);
-        mEGL.eglDestroySurface(mEGLDisplay, mEGLSurface);
-        mEGL.eglDestroyContext(mEGLDisplay, mEGLContext);
+        if (mReductionPass != null) {
+            mReductionPass.destroy();
+        }
+
+        dispose();
+    }
+
+    /**
+     * Destroys the pixel buffer without drawing, so its context doesn't need to be current on the
+     * calling thread. The OpenGL resources are freed along with the context.
+     */
+    void dispose() {
+        releaseCurrent();
+
+        if (!isInvalid()) {
+            mEGL.eglDestroySurface(mEGLDisplay, mEGLSurface);
+            mEGL.eglDestroyContext(mEGLDisplay, mEGLContext);
+        }
+
         mEGL.eglTerminate(mEGLDisplay);
     }
 
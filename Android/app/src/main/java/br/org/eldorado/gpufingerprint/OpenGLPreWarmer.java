@@ -0,0 +1,242 @@
+package br.org.eldorado.gpufingerprint;
+
+import android.os.Process;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prepares an {@link OpenGLPixelBuffer} on a low-priority background thread, so the display
+ * initialization, configuration choice, context creation and program compilation are done before
+ * the first capture is requested.
+ * <p>
+ * A pre-warmed pixel buffer which is not acquired within {@link #IDLE_TIMEOUT_MILLIS}, or which is
+ * {@link #release() released}, is destroyed by the pre-warm thread, so an unused context doesn't
+ * stay resident.
+ */
+final class OpenGLPreWarmer {
+    /**
+     * The name of the thread where the pixel buffer is pre-warmed.
+     */
+    private static final String THREAD_NAME = "OpenGLPreWarmer";
+
+    /**
+     * The time a pre-warmed pixel buffer is kept waiting to be acquired, in milliseconds.
+     */
+    static final long IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Lock guarding {@link #sPending} and the state of every {@link PreWarm}.
+     */
+    private static final Object sLock = new Object();
+
+    /**
+     * The pre-warm waiting to be acquired, or null if there is none.
+     */
+    private static PreWarm sPending;
+
+    /**
+     * Constructor.
+     */
+    private OpenGLPreWarmer() {
+    }
+
+    /**
+     * Schedules the pre-warm of a pixel buffer. Has no effect while a pre-warmed pixel buffer is
+     * waiting to be acquired.
+     *
+     * @param factory the factory which creates the pixel buffer and sets its renderer.
+     */
+    static void schedule(Callable<OpenGLPixelBuffer> factory) {
+        PreWarm preWarm;
+
+        synchronized (sLock) {
+            if (sPending != null) {
+                return;
+            }
+
+            preWarm = new PreWarm(factory);
+            sPending = preWarm;
+        }
+
+        Thread thread = new Thread(preWarm, THREAD_NAME);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Releases the pre-warmed pixel buffer waiting to be acquired, if any. It is destroyed on the
+     * pre-warm thread once ready.
+     */
+    static void release() {
+        synchronized (sLock) {
+            if (sPending != null) {
+                sPending.mReleased = true;
+                sPending = null;
+                sLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns a pixel buffer current on the calling thread. The pending pre-warmed pixel buffer is
+     * handed over, waiting for it if the pre-warm is still running; otherwise, or if the hand-over
+     * fails, a new one is created by the given factory.
+     *
+     * @param factory the factory which creates the pixel buffer and sets its renderer.
+     * @return the pixel buffer, flagged by {@link OpenGLPixelBuffer#isPreWarmed()} if the pre-warm
+     * had already finished when it was requested.
+     * @throws Exception if the factory could not create the pixel buffer.
+     */
+    static OpenGLPixelBuffer acquire(Callable<OpenGLPixelBuffer> factory) throws Exception {
+        PreWarm preWarm;
+
+        synchronized (sLock) {
+            preWarm = sPending;
+            sPending = null;
+        }
+
+        if (preWarm != null) {
+            OpenGLPixelBuffer pixelBuffer = preWarm.claim();
+
+            if (pixelBuffer != null) {
+                return pixelBuffer;
+            }
+        }
+
+        return factory.call();
+    }
+
+    /**
+     * Pre-warm of a pixel buffer, which is owned by the pre-warm thread until claimed and destroyed
+     * by it if released or left idle.
+     */
+    private static final class PreWarm implements Runnable {
+        /**
+         * The task creating the pixel buffer.
+         */
+        private final FutureTask<OpenGLPixelBuffer> mTask;
+
+        /**
+         * Flag which indicates whether the pixel buffer was handed over to a capture.
+         */
+        private boolean mClaimed;
+
+        /**
+         * Flag which indicates whether the pixel buffer is, or is to be, destroyed by the pre-warm
+         * thread.
+         */
+        private boolean mReleased;
+
+        /**
+         * Constructor.
+         *
+         * @param factory the factory which creates the pixel buffer and sets its renderer.
+         */
+        PreWarm(final Callable<OpenGLPixelBuffer> factory) {
+            this.mTask = new FutureTask<>(new Callable<OpenGLPixelBuffer>() {
+                @Override
+                public OpenGLPixelBuffer call() throws Exception {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                    OpenGLPixelBuffer pixelBuffer = factory.call();
+
+                    pixelBuffer.releaseCurrent();
+
+                    return pixelBuffer;
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            mTask.run();
+
+            OpenGLPixelBuffer pixelBuffer;
+
+            try {
+                pixelBuffer = mTask.get();
+            } catch (ExecutionException | InterruptedException e) {
+                return;
+            }
+
+            synchronized (sLock) {
+                long deadline = System.currentTimeMillis() + IDLE_TIMEOUT_MILLIS;
+
+                for (long remaining = IDLE_TIMEOUT_MILLIS; !mClaimed && !mReleased
+                        && (remaining > 0); remaining = deadline - System.currentTimeMillis()) {
+                    try {
+                        sLock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+
+                if (mClaimed) {
+                    return;
+                }
+
+                mReleased = true;
+
+                if (sPending == this) {
+                    sPending = null;
+                }
+            }
+
+            pixelBuffer.dispose();
+        }
+
+        /**
+         * Waits for the pixel buffer and makes it current on the calling thread.
+         *
+         * @return the pixel buffer or null if the pre-warm failed, the pixel buffer was released
+         * or it couldn't be made current.
+         */
+        OpenGLPixelBuffer claim() {
+            boolean preWarmed = mTask.isDone();
+            OpenGLPixelBuffer pixelBuffer;
+
+            try {
+                pixelBuffer = mTask.get();
+            } catch (ExecutionException e) {
+                // The pre-warm failed, so the pixel buffer is created on demand.
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                handBack();
+                return null;
+            }
+
+            synchronized (sLock) {
+                if (mReleased) {
+                    return null;
+                }
+
+                mClaimed = true;
+                sLock.notifyAll();
+            }
+
+            if (!pixelBuffer.makeCurrent()) {
+                pixelBuffer.dispose();
+                return null;
+            }
+
+            pixelBuffer.setPreWarmed(preWarmed);
+
+            return pixelBuffer;
+        }
+
+        /**
+         * Hands the pixel buffer back to the pre-warm thread to be destroyed.
+         */
+        private void handBack() {
+            synchronized (sLock) {
+                mReleased = true;
+                sLock.notifyAll();
+            }
+        }
+    }
+}
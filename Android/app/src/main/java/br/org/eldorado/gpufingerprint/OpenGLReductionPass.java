@@ -0,0 +1,435 @@
+package br.org.eldorado.gpufingerprint;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Second render pass which reduces the frame drawn on the current surface into a small texture on
+ * the GPU, so only the fingerprint feature vector has to be read back. The reduction is described,
+ * and mirrored on the CPU, by {@link FingerprintReducer}.
+ * <p>
+ * A pass can draw with the program, quad buffer and textures of another pass created on a context
+ * of the same share group. Framebuffers aren't shared between contexts, so each pass has its own.
+ * <p>
+ * The instrumented OpenGLReductionPassTest compares both byte for byte on a device. Until it passes
+ * on the devices of the fleet, the GPU path is unverified and is kept disabled in the app.
+ */
+final class OpenGLReductionPass {
+    /**
+     * Vertex position attribute name.
+     */
+    private static final String POSITION_ATTRIBUTE_NAME = "aPosition";
+
+    /**
+     * Source texture uniform name.
+     */
+    private static final String SOURCE_UNIFORM_NAME = "uSource";
+
+    /**
+     * Source size uniform name.
+     */
+    private static final String SOURCE_SIZE_UNIFORM_NAME = "uSourceSize";
+
+    /**
+     * Block count uniform name.
+     */
+    private static final String BLOCKS_UNIFORM_NAME = "uBlocks";
+
+    /**
+     * The largest block size, in pixels, supported by the reduction shader.
+     */
+    private static final int MAX_BLOCK_SIZE = 64;
+
+    /**
+     * The reduction vertex shader, which draws a full-screen quad.
+     */
+    private static final String VERTEX_SHADER = "attribute vec2 aPosition; void main(void) { gl_Position = vec4(aPosition, 0.0, 1.0); }";
+
+    /**
+     * The reduction fragment shader, which computes one texel of the output of
+     * {@link FingerprintReducer}.
+     */
+    private static final String FRAGMENT_SHADER = "precision highp float;"
+            + " uniform sampler2D uSource; uniform vec2 uSourceSize; uniform float uBlocks;"
+            + " const int MAX_BLOCK_SIZE = " + MAX_BLOCK_SIZE + ";"
+            + " const vec3 LUMINANCE_WEIGHTS = vec3(0.299, 0.587, 0.114);"
+            + " vec4 fetch(float x, float y) { return texture2D(uSource, (vec2(min(x, uSourceSize.x - 1.0), min(y, uSourceSize.y - 1.0)) + 0.5) / uSourceSize); }"
+            + " void main(void) {"
+            + " vec2 texel = floor(gl_FragCoord.xy); vec2 block = floor(texel / 2.0); vec2 feature = texel - block * 2.0;"
+            + " vec2 start = floor(block * uSourceSize / uBlocks); vec2 size = floor((block + 1.0) * uSourceSize / uBlocks) - start;"
+            + " float count = size.x * size.y;"
+            + " vec4 sum = vec4(0.0); vec4 squares = vec4(0.0); vec4 edges = vec4(0.0);"
+            + " float luminanceSum = 0.0; float luminanceSquares = 0.0; vec2 moment = vec2(0.0);"
+            + " for (int j = 0; j < MAX_BLOCK_SIZE; j++) { if (float(j) >= size.y) break;"
+            + " for (int i = 0; i < MAX_BLOCK_SIZE; i++) { if (float(i) >= size.x) break;"
+            + " float x = start.x + float(i); float y = start.y + float(j);"
+            + " vec4 color = fetch(x, y); float luminance = dot(color.rgb, LUMINANCE_WEIGHTS);"
+            + " float gradient = min(1.0, abs(dot(fetch(x + 1.0, y).rgb, LUMINANCE_WEIGHTS) - luminance) + abs(dot(fetch(x, y + 1.0).rgb, LUMINANCE_WEIGHTS) - luminance));"
+            + " sum += color; squares += color * color; edges += color * gradient;"
+            + " luminanceSum += luminance; luminanceSquares += luminance * luminance;"
+            + " moment += luminance * (vec2(float(i), float(j)) + 0.5) / size; } }"
+            + " vec4 mean = sum / count;"
+            + " if (feature.y < 0.5) { gl_FragColor = (feature.x < 0.5) ? mean : edges / count; }"
+            + " else if (feature.x < 0.5) { gl_FragColor = vec4((luminanceSum > 0.0) ? moment / luminanceSum : vec2(0.5), luminanceSum / count, luminanceSquares / count); }"
+            + " else { gl_FragColor = clamp((squares / count - mean * mean) * 4.0, 0.0, 1.0); } }";
+
+    /**
+     * The minimum precision, in bits, of the fragment shader high precision floats. Block sums
+     * need a single precision mantissa to match {@link FingerprintReducer} within a quantisation
+     * step; mediump only offers ten bits.
+     */
+    private static final int MIN_FLOAT_PRECISION_BITS = 23;
+
+    /**
+     * The full-screen quad vertices, drawn as a triangle strip.
+     */
+    private static final float[] QUAD_VERTICES_MATRIX = {-1f, -1f, 1f, -1f, -1f, 1f, 1f, 1f};
+
+    /**
+     * Number of coordinates to define a quad vertex (two-dimensional).
+     */
+    private static final int POINT_COORDINATES = 2;
+
+    /**
+     * Number of points to define the quad.
+     */
+    private static final int QUAD_POINTS = 4;
+
+    /**
+     * The pass whose program, quad buffer and textures are used, or null if the pass owns them.
+     */
+    private final OpenGLReductionPass mSharedPass;
+
+    /**
+     * The reduction program handle.
+     */
+    private int mProgramHandle;
+
+    /**
+     * The vertex position attribute location.
+     */
+    private int mPositionAttributeLocation;
+
+    /**
+     * The source texture uniform location.
+     */
+    private int mSourceUniformLocation;
+
+    /**
+     * The source size uniform location.
+     */
+    private int mSourceSizeUniformLocation;
+
+    /**
+     * The block count uniform location.
+     */
+    private int mBlocksUniformLocation;
+
+    /**
+     * The quad vertices buffer handle.
+     */
+    private int mQuadVerticesBufferHandle;
+
+    /**
+     * The handle of the texture receiving a copy of the frame to be reduced.
+     */
+    private int mSourceTextureHandle;
+
+    /**
+     * The handle of the texture receiving the reduced output.
+     */
+    private int mOutputTextureHandle;
+
+    /**
+     * The handle of the framebuffer where the reduced output is drawn.
+     */
+    private int mFramebufferHandle;
+
+    /**
+     * Constructor of a pass owning its OpenGL resources.
+     */
+    OpenGLReductionPass() {
+        this(null);
+    }
+
+    /**
+     * Constructor of a pass drawing with the program, quad buffer and textures of another pass.
+     *
+     * @param sharedPass the pass, prepared on a context of the same share group as the one this
+     *                   pass is used with, or null if the pass owns its resources.
+     */
+    OpenGLReductionPass(OpenGLReductionPass sharedPass) {
+        this.mSharedPass = sharedPass;
+    }
+
+    /**
+     * Reduces the frame drawn on the current surface. The OpenGL resources are prepared on the
+     * first call, so the OpenGL context must be current on the calling thread and must be the
+     * same one on every call.
+     *
+     * @param width  the width of the current surface.
+     * @param height the height of the current surface.
+     * @return the {@link FingerprintReducer#OUTPUT_BYTES} bytes of the reduced output or null if
+     * the fragment shaders lack single precision floats or the reduction program couldn't be
+     * created.
+     */
+    byte[] reduce(int width, int height) {
+        if ((width > FingerprintReducer.BLOCKS * MAX_BLOCK_SIZE)
+                || (height > FingerprintReducer.BLOCKS * MAX_BLOCK_SIZE)) {
+            throw new IllegalArgumentException("Surface too large to be reduced: " + width + "x"
+                    + height);
+        }
+
+        if (!prepare()) {
+            return null;
+        }
+
+        int[] previousProgram = new int[1];
+        int[] previousViewport = new int[4];
+
+        GLES20.glGetIntegerv(GLES20.GL_CURRENT_PROGRAM, previousProgram, 0);
+        GLES20.glGetIntegerv(GLES20.GL_VIEWPORT, previousViewport, 0);
+
+        boolean depthTestEnabled = GLES20.glIsEnabled(GLES20.GL_DEPTH_TEST);
+        boolean ditherEnabled = GLES20.glIsEnabled(GLES20.GL_DITHER);
+
+        int[] alphaBits = new int[1];
+
+        // Surfaces without alpha can only be copied into RGB textures, which are sampled with
+        // an alpha of one.
+        GLES20.glGetIntegerv(GLES20.GL_ALPHA_BITS, alphaBits, 0);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mSourceTextureHandle);
+        GLES20.glCopyTexImage2D(GLES20.GL_TEXTURE_2D, 0,
+                (alphaBits[0] > 0) ? GLES20.GL_RGBA : GLES20.GL_RGB, 0, 0, width, height, 0);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebufferHandle);
+        GLES20.glViewport(0, 0, FingerprintReducer.OUTPUT_SIZE, FingerprintReducer.OUTPUT_SIZE);
+        GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+        GLES20.glDisable(GLES20.GL_DITHER);
+
+        GLES20.glUseProgram(mProgramHandle);
+        GLES20.glUniform1i(mSourceUniformLocation, 0);
+        GLES20.glUniform2f(mSourceSizeUniformLocation, width, height);
+        GLES20.glUniform1f(mBlocksUniformLocation, FingerprintReducer.BLOCKS);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mQuadVerticesBufferHandle);
+        GLES20.glEnableVertexAttribArray(mPositionAttributeLocation);
+        GLES20.glVertexAttribPointer(mPositionAttributeLocation, POINT_COORDINATES,
+                GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, QUAD_POINTS);
+
+        ByteBuffer output = ByteBuffer.allocate(FingerprintReducer.OUTPUT_BYTES);
+
+        GLES20.glReadPixels(0, 0, FingerprintReducer.OUTPUT_SIZE, FingerprintReducer.OUTPUT_SIZE,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, output);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(previousViewport[0], previousViewport[1], previousViewport[2],
+                previousViewport[3]);
+        GLES20.glUseProgram(previousProgram[0]);
+
+        if (depthTestEnabled) {
+            GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+        }
+
+        if (ditherEnabled) {
+            GLES20.glEnable(GLES20.GL_DITHER);
+        }
+
+        return output.array();
+    }
+
+    /**
+     * Prepares the OpenGL resources of the reduction pass, if not done yet: the program, the quad
+     * buffer and the textures, unless they are shared, and the output framebuffer. The OpenGL
+     * context must be current on the calling thread.
+     *
+     * @return true if the pass is ready to reduce or false if the fragment shaders lack single
+     * precision floats or the resources couldn't be created.
+     */
+    boolean prepare() {
+        if (mFramebufferHandle != GLES20.GL_FALSE) {
+            return true;
+        }
+
+        if (mSharedPass != null) {
+            if (mSharedPass.mProgramHandle == GLES20.GL_FALSE) {
+                return false;
+            }
+
+            mProgramHandle = mSharedPass.mProgramHandle;
+            mPositionAttributeLocation = mSharedPass.mPositionAttributeLocation;
+            mSourceUniformLocation = mSharedPass.mSourceUniformLocation;
+            mSourceSizeUniformLocation = mSharedPass.mSourceSizeUniformLocation;
+            mBlocksUniformLocation = mSharedPass.mBlocksUniformLocation;
+            mQuadVerticesBufferHandle = mSharedPass.mQuadVerticesBufferHandle;
+            mSourceTextureHandle = mSharedPass.mSourceTextureHandle;
+            mOutputTextureHandle = mSharedPass.mOutputTextureHandle;
+        } else if (!create()) {
+            return false;
+        }
+
+        if (!createFramebuffer()) {
+            destroy();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases the OpenGL resources of the reduction pass: its framebuffer and, unless they are
+     * shared, the program, the quad buffer and the textures. The OpenGL context must be current on
+     * the calling thread.
+     */
+    void destroy() {
+        if (mFramebufferHandle != GLES20.GL_FALSE) {
+            GLES20.glDeleteFramebuffers(1, new int[]{mFramebufferHandle}, 0);
+
+            mFramebufferHandle = GLES20.GL_FALSE;
+        }
+
+        if ((mSharedPass == null) && (mProgramHandle != GLES20.GL_FALSE)) {
+            GLES20.glDeleteTextures(2, new int[]{mSourceTextureHandle, mOutputTextureHandle}, 0);
+            GLES20.glDeleteBuffers(1, new int[]{mQuadVerticesBufferHandle}, 0);
+            GLES20.glDeleteProgram(mProgramHandle);
+        }
+
+        mProgramHandle = GLES20.GL_FALSE;
+    }
+
+    /**
+     * Creates the reduction program, the quad buffer and the textures.
+     *
+     * @return true if the resources were created or false otherwise.
+     */
+    private boolean create() {
+        int[] range = new int[2];
+        int[] precision = new int[1];
+
+        GLES20.glGetShaderPrecisionFormat(GLES20.GL_FRAGMENT_SHADER, GLES20.GL_HIGH_FLOAT, range, 0,
+                precision, 0);
+
+        if (precision[0] < MIN_FLOAT_PRECISION_BITS) {
+            return false;
+        }
+
+        mProgramHandle = createProgram();
+
+        if (mProgramHandle == GLES20.GL_FALSE) {
+            return false;
+        }
+
+        mPositionAttributeLocation = GLES20.glGetAttribLocation(mProgramHandle,
+                POSITION_ATTRIBUTE_NAME);
+        mSourceUniformLocation = GLES20.glGetUniformLocation(mProgramHandle, SOURCE_UNIFORM_NAME);
+        mSourceSizeUniformLocation = GLES20.glGetUniformLocation(mProgramHandle,
+                SOURCE_SIZE_UNIFORM_NAME);
+        mBlocksUniformLocation = GLES20.glGetUniformLocation(mProgramHandle, BLOCKS_UNIFORM_NAME);
+
+        int[] handles = new int[2];
+
+        GLES20.glGenBuffers(1, handles, 0);
+        mQuadVerticesBufferHandle = handles[0];
+
+        FloatBuffer quadVertices = FloatBuffer.wrap(QUAD_VERTICES_MATRIX);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mQuadVerticesBufferHandle);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER,
+                quadVertices.capacity() * Float.SIZE / Byte.SIZE, quadVertices,
+                GLES20.GL_STATIC_DRAW);
+
+        GLES20.glGenTextures(2, handles, 0);
+        mSourceTextureHandle = handles[0];
+        mOutputTextureHandle = handles[1];
+
+        configureTexture(mSourceTextureHandle);
+        configureTexture(mOutputTextureHandle);
+
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA,
+                FingerprintReducer.OUTPUT_SIZE, FingerprintReducer.OUTPUT_SIZE, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+        return true;
+    }
+
+    /**
+     * Creates the framebuffer where the reduced output is drawn, on the current context.
+     *
+     * @return true if the framebuffer is complete or false otherwise.
+     */
+    private boolean createFramebuffer() {
+        int[] handles = new int[1];
+
+        GLES20.glGenFramebuffers(1, handles, 0);
+        mFramebufferHandle = handles[0];
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebufferHandle);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, mOutputTextureHandle, 0);
+
+        boolean complete = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER)
+                == GLES20.GL_FRAMEBUFFER_COMPLETE;
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        return complete;
+    }
+
+    /**
+     * Binds a texture and configures it for exact texel fetches on non-power-of-two sizes.
+     *
+     * @param textureHandle the texture handle.
+     */
+    private void configureTexture(int textureHandle) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER,
+                GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
+                GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
+                GLES20.GL_CLAMP_TO_EDGE);
+    }
+
+    /**
+     * Creates the OpenGL program to reduce the frame.
+     *
+     * @return the handle of the just create OpenGL program or {@link GLES20#GL_FALSE} if the
+     * program couldn't be created.
+     */
+    private int createProgram() {
+        int programHandle = GLES20.GL_FALSE;
+        int vertexShaderHandle = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
+        int fragmentShaderHandle = GLES20.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
+
+        if ((vertexShaderHandle != GLES20.GL_FALSE) && (fragmentShaderHandle != GLES20.GL_FALSE)) {
+            GLES20.glShaderSource(vertexShaderHandle, VERTEX_SHADER);
+            GLES20.glCompileShader(vertexShaderHandle);
+
+            GLES20.glShaderSource(fragmentShaderHandle, FRAGMENT_SHADER);
+            GLES20.glCompileShader(fragmentShaderHandle);
+
+            programHandle = GLES20.glCreateProgram();
+
+            GLES20.glAttachShader(programHandle, vertexShaderHandle);
+            GLES20.glAttachShader(programHandle, fragmentShaderHandle);
+            GLES20.glLinkProgram(programHandle);
+
+            int[] linkStatus = new int[1];
+
+            GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+
+            if (linkStatus[0] != GLES20.GL_TRUE) {
+                programHandle = GLES20.GL_FALSE;
+            }
+        }
+
+        return programHandle;
+    }
+}
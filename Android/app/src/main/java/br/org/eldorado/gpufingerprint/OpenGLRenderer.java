@@ -4,8 +4,6 @@ import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
 import java.util.Arrays;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -115,6 +113,16 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
      */
     private int mProgramHandle;
 
+    /**
+     * The vertex position attribute location.
+     */
+    private int mVertexPositionAttributeLocation;
+
+    /**
+     * The vertex color attribute location.
+     */
+    private int mVertexColorAttributeLocation;
+
     /**
      * The triangle vertices buffer handle.
      */
@@ -141,6 +149,50 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
      */
     private boolean mCreatedCalled;
 
+    /**
+     * The backend issuing the OpenGL calls.
+     */
+    private final GLBackend mBackend;
+
+    /**
+     * The recorder of the OpenGL calls issued while creating the surface and drawing the first
+     * frame.
+     */
+    private final GLCommandRecorder mRecorder;
+
+    /**
+     * The first frame prepared to be replayed on the next frames, or null before the first frame
+     * is drawn.
+     */
+    private GLCommandBuffer.Frame mFrame;
+
+    /**
+     * Constructor. The OpenGL calls are issued to the context current on the calling thread.
+     */
+    OpenGLRenderer() {
+        this(new GLES20Backend());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param backend the backend issuing the OpenGL calls.
+     */
+    OpenGLRenderer(GLBackend backend) {
+        this.mBackend = backend;
+        this.mRecorder = new GLCommandRecorder(backend);
+    }
+
+    /**
+     * Returns the OpenGL calls issued while creating the surface and drawing the first frame, so
+     * they can be attached to a fingerprint record and replayed off-device.
+     *
+     * @return the recorded OpenGL calls.
+     */
+    GLCommandBuffer getCommandBuffer() {
+        return mRecorder.getCommands();
+    }
+
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         mCreatedCalled = true;
@@ -154,8 +206,8 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
             mCubeVerticesBufferHandle = createFloatBuffer(CUBE_VERTICES_MATRIX);
             mCubeColorsBufferHandle = createFloatBuffer(CUBE_COLORS_MATRIX);
 
-            GLES20.glClearColor(0, 0, 0, 0);
-            GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+            mRecorder.glClearColor(0, 0, 0, 0);
+            mRecorder.glEnable(GLES20.GL_DEPTH_TEST);
         }
     }
 
@@ -163,6 +215,30 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
     public void onSurfaceChanged(GL10 gl, int width, int height) {
     }
 
+    /**
+     * Sets the context current on the calling thread up to draw with the program and buffers
+     * created by {@link #onSurfaceCreated(GL10, EGLConfig)} on another context of the same share
+     * group. The objects are shared, but the program in use, the enabled vertex attribute arrays,
+     * the clear color and the depth test belong to each context. The calls aren't recorded, so
+     * {@link #getCommandBuffer()} keeps describing the surface the objects were created on.
+     *
+     * @return true if the image can be drawn on the context or false if the program couldn't be
+     * created.
+     */
+    boolean onSharedSurfaceCreated() {
+        if (mProgramHandle == GLES20.GL_FALSE) {
+            return false;
+        }
+
+        mBackend.glUseProgram(mProgramHandle);
+        mBackend.glEnableVertexAttribArray(mVertexPositionAttributeLocation);
+        mBackend.glEnableVertexAttribArray(mVertexColorAttributeLocation);
+        mBackend.glClearColor(0, 0, 0, 0);
+        mBackend.glEnable(GLES20.GL_DEPTH_TEST);
+
+        return true;
+    }
+
     @Override
     public void onDrawFrame(GL10 gl) {
         if (mProgramHandle != GLES20.GL_FALSE) {
@@ -170,38 +246,43 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
                 onSurfaceCreated(gl, null);
             }
 
-            GLES20.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+            if (mFrame != null) {
+                mFrame.execute(mBackend);
+                return;
+            }
+
+            int mark = mRecorder.mark();
 
-            int vertexPositionAttributeLocation = GLES20.glGetAttribLocation(mProgramHandle,
+            mRecorder.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+
+            int vertexPositionAttributeLocation = mRecorder.glGetAttribLocation(mProgramHandle,
                     VERTEX_POSITION_ATTRIBUTE_NAME);
-            int vertexColorAttributeLocation = GLES20.glGetAttribLocation(mProgramHandle,
+            int vertexColorAttributeLocation = mRecorder.glGetAttribLocation(mProgramHandle,
                     VERTEX_COLOR_ATTRIBUTE_NAME);
 
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTriangleVerticesBufferHandle);
-            GLES20.glVertexAttribPointer(vertexPositionAttributeLocation, POINT_COORDINATES,
+            mRecorder.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTriangleVerticesBufferHandle);
+            mRecorder.glVertexAttribPointer(vertexPositionAttributeLocation, POINT_COORDINATES,
                     GLES20.GL_FLOAT, false, 0, 0);
 
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTriangleColorsBufferHandle);
-            GLES20.glVertexAttribPointer(vertexColorAttributeLocation, COLOR_CHANNELS,
+            mRecorder.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTriangleColorsBufferHandle);
+            mRecorder.glVertexAttribPointer(vertexColorAttributeLocation, COLOR_CHANNELS,
                     GLES20.GL_FLOAT, false, 0, 0);
 
-            int projectionMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle,
+            int projectionMatrixHandle = mRecorder.glGetUniformLocation(mProgramHandle,
                     PROJECTION_MATRIX_ATTRIBUTE_NAME);
-            int modelViewMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle,
+            int modelViewMatrixHandle = mRecorder.glGetUniformLocation(mProgramHandle,
                     MODEL_VIEW_MATRIX_ATTRIBUTE_NAME);
 
-            GLES20.glUniformMatrix4fv(projectionMatrixHandle, 1, false,
-                    FloatBuffer.wrap(SHAPES_PROJECTION_MATRIX));
-            GLES20.glUniformMatrix4fv(modelViewMatrixHandle, 1, false,
-                    FloatBuffer.wrap(TRIANGLE_MODEL_VIEW_MATRIX));
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, TRIANGLE_POINTS);
+            mRecorder.glUniformMatrix4fv(projectionMatrixHandle, SHAPES_PROJECTION_MATRIX);
+            mRecorder.glUniformMatrix4fv(modelViewMatrixHandle, TRIANGLE_MODEL_VIEW_MATRIX);
+            mRecorder.glDrawArrays(GLES20.GL_TRIANGLES, 0, TRIANGLE_POINTS);
 
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mCubeVerticesBufferHandle);
-            GLES20.glVertexAttribPointer(vertexPositionAttributeLocation, POINT_COORDINATES,
+            mRecorder.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mCubeVerticesBufferHandle);
+            mRecorder.glVertexAttribPointer(vertexPositionAttributeLocation, POINT_COORDINATES,
                     GLES20.GL_FLOAT, false, 0, 0);
 
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mCubeColorsBufferHandle);
-            GLES20.glVertexAttribPointer(vertexColorAttributeLocation, COLOR_CHANNELS,
+            mRecorder.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mCubeColorsBufferHandle);
+            mRecorder.glVertexAttribPointer(vertexColorAttributeLocation, COLOR_CHANNELS,
                     GLES20.GL_FLOAT, false, 0, 0);
 
             float[] modelViewMatrix = Arrays.copyOf(CUBE_MODEL_VIEW_MATRIX,
@@ -210,15 +291,12 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
             Matrix.rotateM(modelViewMatrix, 0, CUBE_Z_AXIS_ROTATION_ANGLE, 0, 0, 1);
             Matrix.rotateM(modelViewMatrix, 0, CUBE_Y_AXIS_ROTATION_ANGLE, 0, 1, 0);
 
-            GLES20.glUniformMatrix4fv(projectionMatrixHandle, 1, false,
-                    FloatBuffer.wrap(SHAPES_PROJECTION_MATRIX));
-            GLES20.glUniformMatrix4fv(modelViewMatrixHandle, 1, false,
-                    FloatBuffer.wrap(modelViewMatrix));
+            mRecorder.glUniformMatrix4fv(projectionMatrixHandle, SHAPES_PROJECTION_MATRIX);
+            mRecorder.glUniformMatrix4fv(modelViewMatrixHandle, modelViewMatrix);
 
-            ShortBuffer cubeIndices = ShortBuffer.wrap(CUBE_INDICES_MATRIX);
+            mRecorder.glDrawElements(GLES20.GL_TRIANGLES, CUBE_INDICES_MATRIX);
 
-            GLES20.glDrawElements(GLES20.GL_TRIANGLES, cubeIndices.capacity(),
-                    GLES20.GL_UNSIGNED_SHORT, cubeIndices);
+            mFrame = mRecorder.getCommands(mark).prepare();
         }
     }
 
@@ -230,38 +308,36 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
      */
     private int createProgram() {
         int programHandle = GLES20.GL_FALSE;
-        int vertexShaderHandle = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
-        int fragmentShaderHandle = GLES20.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
+        int vertexShaderHandle = mRecorder.glCreateShader(GLES20.GL_VERTEX_SHADER);
+        int fragmentShaderHandle = mRecorder.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
 
         if ((vertexShaderHandle != GLES20.GL_FALSE) && (fragmentShaderHandle != GLES20.GL_FALSE)) {
-            GLES20.glShaderSource(vertexShaderHandle,
+            mRecorder.glShaderSource(vertexShaderHandle,
                     "attribute vec3 aVertexPosition; attribute vec4 aVertexColor; uniform mat4 uMVMatrix; uniform mat4 uPMatrix; varying vec4 vColor; void main(void) { gl_Position = uPMatrix * uMVMatrix * vec4(aVertexPosition, 1.0); vColor = aVertexColor; }");
-            GLES20.glCompileShader(vertexShaderHandle);
+            mRecorder.glCompileShader(vertexShaderHandle);
 
-            GLES20.glShaderSource(fragmentShaderHandle,
+            mRecorder.glShaderSource(fragmentShaderHandle,
                     "precision mediump float; varying vec4 vColor; void main(void) { gl_FragColor = vColor; }");
-            GLES20.glCompileShader(fragmentShaderHandle);
-
-            programHandle = GLES20.glCreateProgram();
+            mRecorder.glCompileShader(fragmentShaderHandle);
 
-            GLES20.glAttachShader(programHandle, vertexShaderHandle);
-            GLES20.glAttachShader(programHandle, fragmentShaderHandle);
-            GLES20.glLinkProgram(programHandle);
+            programHandle = mRecorder.glCreateProgram();
 
-            int[] linkStatus = new int[1];
+            mRecorder.glAttachShader(programHandle, vertexShaderHandle);
+            mRecorder.glAttachShader(programHandle, fragmentShaderHandle);
+            mRecorder.glLinkProgram(programHandle);
 
-            GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            int linkStatus = mRecorder.glGetProgram(programHandle, GLES20.GL_LINK_STATUS);
 
-            if (linkStatus[0] == GLES20.GL_TRUE) {
-                GLES20.glUseProgram(programHandle);
+            if (linkStatus == GLES20.GL_TRUE) {
+                mRecorder.glUseProgram(programHandle);
 
-                int vertexPosition = GLES20.glGetAttribLocation(programHandle,
+                mVertexPositionAttributeLocation = mRecorder.glGetAttribLocation(programHandle,
                         VERTEX_POSITION_ATTRIBUTE_NAME);
-                GLES20.glEnableVertexAttribArray(vertexPosition);
+                mRecorder.glEnableVertexAttribArray(mVertexPositionAttributeLocation);
 
-                int vertexColor = GLES20.glGetAttribLocation(programHandle,
+                mVertexColorAttributeLocation = mRecorder.glGetAttribLocation(programHandle,
                         VERTEX_COLOR_ATTRIBUTE_NAME);
-                GLES20.glEnableVertexAttribArray(vertexColor);
+                mRecorder.glEnableVertexAttribArray(mVertexColorAttributeLocation);
             } else {
                 programHandle = GLES20.GL_FALSE;
             }
@@ -277,14 +353,11 @@ final class OpenGLRenderer implements GLSurfaceView.Renderer {
      * @return the handle for the just created float buffer.
      */
     private int createFloatBuffer(float... bufferData) {
-        int[] bufferHandle = new int[1];
-        FloatBuffer buffer = FloatBuffer.wrap(bufferData);
+        int bufferHandle = mRecorder.glGenBuffer();
 
-        GLES20.glGenBuffers(1, bufferHandle, 0);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferHandle[0]);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, buffer.capacity() * Float.SIZE / Byte.SIZE,
-                buffer, GLES20.GL_STATIC_DRAW);
+        mRecorder.glBindBuffer(GLES20.GL_ARRAY_BUFFER, bufferHandle);
+        mRecorder.glBufferData(GLES20.GL_ARRAY_BUFFER, bufferData, GLES20.GL_STATIC_DRAW);
 
-        return bufferHandle[0];
+        return bufferHandle;
     }
 }
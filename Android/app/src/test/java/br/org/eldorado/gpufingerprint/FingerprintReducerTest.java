@@ -0,0 +1,84 @@
+package br.org.eldorado.gpufingerprint;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of {@link FingerprintReducer}.
+ */
+public class FingerprintReducerTest {
+    private static final int WIDTH = 250;
+
+    private static final int HEIGHT = 250;
+
+    private static final double QUANTISATION_STEP = 1;
+
+    @Test
+    public void reduce_uniformFrame() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+
+        Arrays.fill(pixels, pack(255, 0, 0, 255));
+
+        byte[] features = FingerprintReducer.reduce(pixels, WIDTH, HEIGHT);
+
+        assertEquals(FingerprintReducer.OUTPUT_BYTES, features.length);
+
+        for (int block = 0; block < FingerprintReducer.BLOCKS; block++) {
+            assertTexel(features, block * 2, block * 2, 255, 0, 0, 255);
+            assertTexel(features, block * 2 + 1, block * 2, 0, 0, 0, 0);
+            assertTexel(features, block * 2, block * 2 + 1, 128, 128, 76, 23);
+            assertTexel(features, block * 2 + 1, block * 2 + 1, 0, 0, 0, 0);
+        }
+    }
+
+    @Test
+    public void reduce_blackFrameCentroidDefaultsToCenter() {
+        byte[] features = FingerprintReducer.reduce(new int[WIDTH * HEIGHT], WIDTH, HEIGHT);
+
+        assertTexel(features, 0, 1, 128, 128, 0, 0);
+    }
+
+    @Test
+    public void reduce_edgeWeightsAndVariance() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+
+        // White right half of the first block, which spans columns [0, 31).
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 16; x < WIDTH; x++) {
+                pixels[y * WIDTH + x] = pack(255, 255, 255, 255);
+            }
+        }
+
+        byte[] features = FingerprintReducer.reduce(pixels, WIDTH, HEIGHT);
+
+        // Only the black pixel on the left of the edge has a gradient, and it is black.
+        assertTexel(features, 1, 0, 0, 0, 0, 0);
+        // The luminance centroid lies on the right half of the block.
+        assertTrue((features[FingerprintReducer.OUTPUT_SIZE * 4] & 0xFF) > 128);
+        // The block is neither black nor white, so every channel varies.
+        assertTrue((features[(FingerprintReducer.OUTPUT_SIZE + 1) * 4] & 0xFF) > 0);
+        // A uniform white block has no variance.
+        assertTexel(features, 3, 1, 0, 0, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reduce_rejectsFramesSmallerThanTheBlockGrid() {
+        FingerprintReducer.reduce(new int[4], 2, 2);
+    }
+
+    private static int pack(int red, int green, int blue, int alpha) {
+        return red | (green << 8) | (blue << 16) | (alpha << 24);
+    }
+
+    private static void assertTexel(byte[] features, int x, int y, int... expected) {
+        int offset = (y * FingerprintReducer.OUTPUT_SIZE + x) * FingerprintReducer.COLOR_CHANNELS;
+
+        for (int c = 0; c < expected.length; c++) {
+            assertEquals("channel " + c + " of texel (" + x + ", " + y + ")", expected[c],
+                    features[offset + c] & 0xFF, QUANTISATION_STEP);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package br.org.eldorado.gpufingerprint;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of {@link GLCommandRecorder} and {@link GLCommandBuffer}, replayed against a backend
+ * which only traces the calls.
+ */
+public class GLCommandBufferTest {
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+
+    private static final int GL_STATIC_DRAW = 0x88E4;
+
+    private static final int GL_VERTEX_SHADER = 0x8B31;
+
+    private static final int GL_LINK_STATUS = 0x8B82;
+
+    private static final int GL_TRIANGLES = 0x0004;
+
+    private static final int GL_DEPTH_TEST = 0x0B71;
+
+    private static final float[] MATRIX = {1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f,
+            0f, 1f};
+
+    @Test
+    public void replay_translatesHandlesAndLocations() {
+        TraceBackend device = new TraceBackend(1);
+        GLCommandRecorder recorder = new GLCommandRecorder(device);
+
+        setUp(recorder);
+        drawFrame(recorder);
+
+        byte[] serialized = recorder.getCommands().serialize();
+        TraceBackend software = new TraceBackend(100);
+
+        GLCommandBuffer.deserialize(serialized).replay(software);
+
+        assertEquals(Arrays.asList(
+                "glCreateShader(35633) = 100",
+                "glShaderSource(100, void main(void) {})",
+                "glCompileShader(100)",
+                "glCreateProgram() = 101",
+                "glAttachShader(101, 100)",
+                "glLinkProgram(101)",
+                "glGetProgram(101, 35714) = 1",
+                "glUseProgram(101)",
+                "glGetAttribLocation(101, aVertexPosition) = 102",
+                "glEnableVertexAttribArray(102)",
+                "glGenBuffer() = 103",
+                "glBindBuffer(34962, 103)",
+                "glBufferData(34962, [0.0, 1.0, 0.0], 35044)",
+                "glClear(16640)",
+                "glGetAttribLocation(101, aVertexPosition) = 104",
+                "glBindBuffer(34962, 103)",
+                "glVertexAttribPointer(104, 3, 5126, false, 0, 0)",
+                "glGetUniformLocation(101, uPMatrix) = 105",
+                "glUniformMatrix4fv(105, " + Arrays.toString(MATRIX) + ")",
+                "glDrawArrays(4, 0, 3)",
+                "glUniformMatrix4fv(105, " + Arrays.toString(MATRIX) + ")",
+                "glDrawElements(4, [0, 1, 2])"), software.mCalls);
+    }
+
+    @Test
+    public void replay_reproducesTheRendererSurfaceCreation() {
+        // Only the surface creation: onDrawFrame needs the native android.opengl.Matrix, which
+        // the unit tests can't load.
+        TraceBackend device = new TraceBackend(1);
+        OpenGLRenderer renderer = new OpenGLRenderer(device);
+
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 250, 250);
+
+        byte[] serialized = renderer.getCommandBuffer().serialize();
+        TraceBackend sameHandles = new TraceBackend(1);
+        TraceBackend software = new TraceBackend(100);
+
+        GLCommandBuffer.deserialize(serialized).replay(sameHandles);
+        GLCommandBuffer.deserialize(serialized).replay(software);
+
+        assertEquals(device.mCalls, sameHandles.mCalls);
+        assertEquals(device.mCalls.size(), software.mCalls.size());
+        assertEquals("glCreateProgram() = 102", software.mCalls.get(6));
+        assertEquals("glUseProgram(102)", software.mCalls.get(11));
+        assertEquals("glEnable(" + GL_DEPTH_TEST + ")",
+                software.mCalls.get(software.mCalls.size() - 1));
+    }
+
+    @Test
+    public void onSharedSurfaceCreated_setsTheContextUpWithoutRecording() {
+        TraceBackend device = new TraceBackend(1);
+        OpenGLRenderer renderer = new OpenGLRenderer(device);
+
+        renderer.onSurfaceCreated(null, null);
+
+        byte[] recorded = renderer.getCommandBuffer().serialize();
+
+        device.mCalls.clear();
+
+        assertTrue(renderer.onSharedSurfaceCreated());
+        assertEquals(Arrays.asList(
+                "glUseProgram(3)",
+                "glEnableVertexAttribArray(4)",
+                "glEnableVertexAttribArray(5)",
+                "glClearColor(0.0, 0.0, 0.0, 0.0)",
+                "glEnable(" + GL_DEPTH_TEST + ")"), device.mCalls);
+        assertArrayEquals(recorded, renderer.getCommandBuffer().serialize());
+    }
+
+    @Test
+    public void prepare_dropsQueriesAndRedundantUniforms() {
+        TraceBackend device = new TraceBackend(1);
+        GLCommandRecorder recorder = new GLCommandRecorder(device);
+
+        setUp(recorder);
+
+        int mark = recorder.mark();
+
+        drawFrame(recorder);
+
+        List<String> recorded = new ArrayList<>(device.mCalls.subList(device.mCalls.size() - 9,
+                device.mCalls.size()));
+        GLCommandBuffer.Frame frame = recorder.getCommands(mark).prepare();
+
+        device.mCalls.clear();
+        frame.execute(device);
+
+        assertEquals(6, frame.size());
+        assertEquals(Arrays.asList(recorded.get(0), recorded.get(2), recorded.get(3),
+                recorded.get(5), recorded.get(6), recorded.get(8)), device.mCalls);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prepare_rejectsObjectCreation() {
+        GLCommandRecorder recorder = new GLCommandRecorder(new TraceBackend(1));
+
+        setUp(recorder);
+        recorder.getCommands().prepare();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deserialize_rejectsUnknownVersions() {
+        GLCommandBuffer.deserialize(new byte[]{42});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void replay_rejectsTruncatedCommands() {
+        GLCommandRecorder recorder = new GLCommandRecorder(new TraceBackend(1));
+
+        setUp(recorder);
+
+        byte[] serialized = recorder.getCommands().serialize();
+
+        GLCommandBuffer.deserialize(Arrays.copyOf(serialized, serialized.length - 2))
+                .replay(new TraceBackend(1));
+    }
+
+    @Test
+    public void replay_rejectsLengthsBeyondTheCommands() {
+        int[] opcodes = {GLCommandBuffer.OP_SHADER_SOURCE, GLCommandBuffer.OP_BUFFER_DATA,
+                GLCommandBuffer.OP_DRAW_ELEMENTS};
+
+        for (int opcode : opcodes) {
+            for (int length : new int[]{Integer.MAX_VALUE, 5, -1}) {
+                byte[] commands = ByteBuffer.allocate(13).put((byte) opcode).putInt(1)
+                        .putInt(length).putInt(0).array();
+
+                try {
+                    new GLCommandBuffer(commands).replay(new TraceBackend(1));
+                    fail("Length " + length + " of opcode " + opcode + " was accepted");
+                } catch (IllegalArgumentException e) {
+                    // Expected.
+                }
+            }
+        }
+    }
+
+    private static void setUp(GLBackend gl) {
+        int shader = gl.glCreateShader(GL_VERTEX_SHADER);
+
+        gl.glShaderSource(shader, "void main(void) {}");
+        gl.glCompileShader(shader);
+
+        int program = gl.glCreateProgram();
+
+        gl.glAttachShader(program, shader);
+        gl.glLinkProgram(program);
+        gl.glGetProgram(program, GL_LINK_STATUS);
+        gl.glUseProgram(program);
+        gl.glEnableVertexAttribArray(gl.glGetAttribLocation(program, "aVertexPosition"));
+
+        int buffer = gl.glGenBuffer();
+
+        gl.glBindBuffer(GL_ARRAY_BUFFER, buffer);
+        gl.glBufferData(GL_ARRAY_BUFFER, new float[]{0f, 1f, 0f}, GL_STATIC_DRAW);
+    }
+
+    private static void drawFrame(GLBackend gl) {
+        int program = 2;
+        int buffer = 4;
+
+        gl.glClear(0x4100);
+
+        int position = gl.glGetAttribLocation(program, "aVertexPosition");
+
+        gl.glBindBuffer(GL_ARRAY_BUFFER, buffer);
+        gl.glVertexAttribPointer(position, 3, 0x1406, false, 0, 0);
+
+        int projection = gl.glGetUniformLocation(program, "uPMatrix");
+
+        gl.glUniformMatrix4fv(projection, MATRIX);
+        gl.glDrawArrays(GL_TRIANGLES, 0, 3);
+        gl.glUniformMatrix4fv(projection, MATRIX);
+        gl.glDrawElements(GL_TRIANGLES, new short[]{0, 1, 2});
+    }
+
+    /**
+     * Backend which traces the calls and returns increasing handles and locations.
+     */
+    private static final class TraceBackend implements GLBackend {
+        private final List<String> mCalls = new ArrayList<>();
+
+        private int mNextHandle;
+
+        TraceBackend(int firstHandle) {
+            mNextHandle = firstHandle;
+        }
+
+        private int trace(String call) {
+            int handle = mNextHandle++;
+
+            mCalls.add(call + " = " + handle);
+
+            return handle;
+        }
+
+        @Override
+        public int glCreateShader(int type) {
+            return trace("glCreateShader(" + type + ")");
+        }
+
+        @Override
+        public void glShaderSource(int shader, String source) {
+            mCalls.add("glShaderSource(" + shader + ", " + source + ")");
+        }
+
+        @Override
+        public void glCompileShader(int shader) {
+            mCalls.add("glCompileShader(" + shader + ")");
+        }
+
+        @Override
+        public int glCreateProgram() {
+            return trace("glCreateProgram()");
+        }
+
+        @Override
+        public void glAttachShader(int program, int shader) {
+            mCalls.add("glAttachShader(" + program + ", " + shader + ")");
+        }
+
+        @Override
+        public void glLinkProgram(int program) {
+            mCalls.add("glLinkProgram(" + program + ")");
+        }
+
+        @Override
+        public int glGetProgram(int program, int name) {
+            mCalls.add("glGetProgram(" + program + ", " + name + ") = 1");
+
+            return 1;
+        }
+
+        @Override
+        public void glUseProgram(int program) {
+            mCalls.add("glUseProgram(" + program + ")");
+        }
+
+        @Override
+        public int glGetAttribLocation(int program, String name) {
+            return trace("glGetAttribLocation(" + program + ", " + name + ")");
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index) {
+            mCalls.add("glEnableVertexAttribArray(" + index + ")");
+        }
+
+        @Override
+        public int glGenBuffer() {
+            return trace("glGenBuffer()");
+        }
+
+        @Override
+        public void glBindBuffer(int target, int buffer) {
+            mCalls.add("glBindBuffer(" + target + ", " + buffer + ")");
+        }
+
+        @Override
+        public void glBufferData(int target, float[] data, int usage) {
+            mCalls.add("glBufferData(" + target + ", " + Arrays.toString(data) + ", " + usage
+                    + ")");
+        }
+
+        @Override
+        public void glClearColor(float red, float green, float blue, float alpha) {
+            mCalls.add("glClearColor(" + red + ", " + green + ", " + blue + ", " + alpha + ")");
+        }
+
+        @Override
+        public void glEnable(int capability) {
+            mCalls.add("glEnable(" + capability + ")");
+        }
+
+        @Override
+        public void glClear(int mask) {
+            mCalls.add("glClear(" + mask + ")");
+        }
+
+        @Override
+        public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                          int stride, int offset) {
+            mCalls.add("glVertexAttribPointer(" + index + ", " + size + ", " + type + ", "
+                    + normalized + ", " + stride + ", " + offset + ")");
+        }
+
+        @Override
+        public int glGetUniformLocation(int program, String name) {
+            return trace("glGetUniformLocation(" + program + ", " + name + ")");
+        }
+
+        @Override
+        public void glUniformMatrix4fv(int location, float[] matrix) {
+            mCalls.add("glUniformMatrix4fv(" + location + ", " + Arrays.toString(matrix) + ")");
+        }
+
+        @Override
+        public void glDrawArrays(int mode, int first, int count) {
+            mCalls.add("glDrawArrays(" + mode + ", " + first + ", " + count + ")");
+        }
+
+        @Override
+        public void glDrawElements(int mode, short[] indices) {
+            mCalls.add("glDrawElements(" + mode + ", " + Arrays.toString(indices) + ")");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package br.org.eldorado.gpufingerprint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the configuration classes swept by {@link OpenGLConfigSweep} and of its
+ * bookkeeping, against targets which only trace the calls.
+ */
+public class OpenGLConfigSweepTest {
+    @Test
+    public void configClasses_keepTheirSubmittedNames() {
+        // The names key the sweep hashes of every submitted record, so they can't change.
+        assertEquals(Arrays.asList("RGBA8888", "RGBA8888_MSAA_2X", "RGBA8888_MSAA_4X", "RGB888",
+                "RGB565"), names(OpenGLConfigClass.values()));
+    }
+
+    @Test
+    public void drawAndReduce_drawsEveryTargetBeforeReducing() {
+        List<String> calls = new ArrayList<>();
+        List<TraceTarget> targets = Arrays.asList(
+                new TraceTarget(OpenGLConfigClass.RGB565, true, new byte[]{5}, calls),
+                new TraceTarget(OpenGLConfigClass.RGBA8888, true, new byte[]{1}, calls));
+
+        Map<OpenGLConfigClass, byte[]> features = OpenGLConfigSweep.drawAndReduce(targets);
+
+        assertEquals(Arrays.asList("draw RGB565", "draw RGBA8888", "reduce RGB565",
+                "reduce RGBA8888"), calls);
+        assertEquals(Arrays.asList("RGBA8888", "RGB565"),
+                names(features.keySet().toArray(new OpenGLConfigClass[0])));
+        assertArrayEquals(new byte[]{5}, features.get(OpenGLConfigClass.RGB565));
+    }
+
+    @Test
+    public void drawAndReduce_leavesFailedTargetsOut() {
+        List<String> calls = new ArrayList<>();
+        List<TraceTarget> targets = Arrays.asList(
+                new TraceTarget(OpenGLConfigClass.RGBA8888, true, new byte[]{1}, calls),
+                new TraceTarget(OpenGLConfigClass.RGBA8888_MSAA_4X, false, new byte[]{4}, calls),
+                new TraceTarget(OpenGLConfigClass.RGB888, true, null, calls));
+
+        Map<OpenGLConfigClass, byte[]> features = OpenGLConfigSweep.drawAndReduce(targets);
+
+        assertEquals(Arrays.asList("draw RGBA8888", "draw RGB888", "reduce RGBA8888",
+                "reduce RGB888"), calls);
+        assertEquals(1, features.size());
+        assertTrue(features.containsKey(OpenGLConfigClass.RGBA8888));
+    }
+
+    private static List<String> names(OpenGLConfigClass[] configClasses) {
+        List<String> names = new ArrayList<>();
+
+        for (OpenGLConfigClass configClass : configClasses) {
+            names.add(configClass.name());
+        }
+
+        return names;
+    }
+
+    /**
+     * Target which traces its draws and reductions.
+     */
+    private static final class TraceTarget implements OpenGLConfigSweep.Target {
+        private final OpenGLConfigClass mConfigClass;
+
+        private final boolean mCurrent;
+
+        private final byte[] mFeatures;
+
+        private final List<String> mCalls;
+
+        TraceTarget(OpenGLConfigClass configClass, boolean current, byte[] features,
+                    List<String> calls) {
+            mConfigClass = configClass;
+            mCurrent = current;
+            mFeatures = features;
+            mCalls = calls;
+        }
+
+        @Override
+        public OpenGLConfigClass getConfigClass() {
+            return mConfigClass;
+        }
+
+        @Override
+        public boolean makeCurrent() {
+            return mCurrent;
+        }
+
+        @Override
+        public void draw() {
+            mCalls.add("draw " + mConfigClass);
+        }
+
+        @Override
+        public byte[] reduce() {
+            mCalls.add("reduce " + mConfigClass);
+            return mFeatures;
+        }
+    }
+}
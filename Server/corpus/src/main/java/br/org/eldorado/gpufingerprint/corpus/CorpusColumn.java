@@ -0,0 +1,135 @@
+package br.org.eldorado.gpufingerprint.corpus;
+
+import br.org.eldorado.gpufingerprint.ingest.FingerprintRecord;
+
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The columns of a fingerprint corpus file. String attributes are dictionary-encoded, the API
+ * level is stored as a fixed-width integer and the hash as fixed-width binary, along with the
+ * encoding it was sent with and the method it was computed with.
+ */
+public enum CorpusColumn {
+    HASH("hash", Type.BINARY),
+    HASH_ENCODING("hashEncoding",
+            (FingerprintRecord record) -> CorpusHashes.getEncoding(record.getHash())),
+    DEVICE_ID("deviceId", FingerprintRecord::getDeviceId),
+    MANUFACTURER("manufacturer", FingerprintRecord::getManufacturer),
+    MODEL("model", FingerprintRecord::getModel),
+    GPU_NAME("gpuName", FingerprintRecord::getGpuName),
+    GPU_VENDOR("gpuVendor", FingerprintRecord::getGpuVendor),
+    OPEN_GL_VERSION("openGLVersion", FingerprintRecord::getOpenGLVersion),
+    OS_VERSION("osVersion", FingerprintRecord::getOsVersion),
+    METHOD("method", FingerprintRecord::getMethod),
+    DATE("date", FingerprintRecord::getDate),
+    HASH_METHOD("hashMethod", FingerprintRecord::getHashMethod),
+    API_LEVEL("apiLevel", FingerprintRecord::getApiLevel);
+
+    /**
+     * The way the values of a column are stored.
+     */
+    public enum Type {
+        /**
+         * Each distinct string is stored once in a dictionary and each row stores its code.
+         */
+        DICTIONARY,
+
+        /**
+         * Each row stores a 32 bits integer.
+         */
+        INT,
+
+        /**
+         * Each row stores a binary value with the same width.
+         */
+        BINARY
+    }
+
+    /**
+     * The column name, as written in the file header.
+     */
+    private final String mName;
+
+    /**
+     * The way the values of the column are stored.
+     */
+    private final Type mType;
+
+    /**
+     * The extractor of string values, for dictionary columns.
+     */
+    private final Function<FingerprintRecord, String> mStringExtractor;
+
+    /**
+     * The extractor of integer values, for integer columns.
+     */
+    private final ToIntFunction<FingerprintRecord> mIntExtractor;
+
+    /**
+     * Constructor of dictionary columns.
+     *
+     * @param name      the column name.
+     * @param extractor the extractor of the column values.
+     */
+    CorpusColumn(String name, Function<FingerprintRecord, String> extractor) {
+        this.mName = name;
+        this.mType = Type.DICTIONARY;
+        this.mStringExtractor = extractor;
+        this.mIntExtractor = null;
+    }
+
+    /**
+     * Constructor of integer columns.
+     *
+     * @param name      the column name.
+     * @param extractor the extractor of the column values.
+     */
+    CorpusColumn(String name, ToIntFunction<FingerprintRecord> extractor) {
+        this.mName = name;
+        this.mType = Type.INT;
+        this.mStringExtractor = null;
+        this.mIntExtractor = extractor;
+    }
+
+    /**
+     * Constructor of columns without extractor.
+     *
+     * @param name the column name.
+     * @param type the way the values of the column are stored.
+     */
+    CorpusColumn(String name, Type type) {
+        this.mName = name;
+        this.mType = type;
+        this.mStringExtractor = null;
+        this.mIntExtractor = null;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * Extracts the value of a dictionary column from a record.
+     *
+     * @param record the record.
+     * @return the column value.
+     */
+    String getString(FingerprintRecord record) {
+        return mStringExtractor.apply(record);
+    }
+
+    /**
+     * Extracts the value of an integer column from a record.
+     *
+     * @param record the record.
+     * @return the column value.
+     */
+    int getInt(FingerprintRecord record) {
+        return mIntExtractor.applyAsInt(record);
+    }
+}
@@ -0,0 +1,104 @@
+package br.org.eldorado.gpufingerprint.corpus;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of a fingerprint corpus file. Every number is little-endian.
+ * <pre>
+ * header:
+ *   magic        8 bytes, {@link #MAGIC}
+ *   version      int, {@link #VERSION}
+ *   rows         int
+ *   columns      int
+ *   for each column:
+ *     name       short length followed by the UTF-8 bytes
+ *     type       byte, the ordinal of {@link CorpusColumn.Type}
+ *     width      byte, the width of each row value in bytes
+ *     offset     long, the position of the column data in the file
+ *     length     long, the length of the column data
+ * dictionary column data:
+ *   entries      int
+ *   for each entry: int length followed by the UTF-8 bytes
+ *   codes        one unsigned code of {@code width} bytes per row; 0 stands for null and entry i
+ *                has code i + 1
+ * int column data:
+ *   values       one int per row
+ * binary column data:
+ *   values       {@code width} bytes per row
+ * </pre>
+ * Column data starts at a multiple of {@link #ALIGNMENT}, so each column can be mapped on its own.
+ */
+final class CorpusFormat {
+    /**
+     * The bytes identifying a corpus file.
+     */
+    static final byte[] MAGIC = "GPUFPCOL".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The version of the layout.
+     */
+    static final int VERSION = 3;
+
+    /**
+     * The size of the header before the column entries, in bytes.
+     */
+    static final int HEADER_PREFIX_SIZE = MAGIC.length + 3 * Integer.BYTES;
+
+    /**
+     * The size of a column entry of the header without its name, in bytes.
+     */
+    static final int COLUMN_ENTRY_SIZE = 2 * Byte.BYTES + 2 * Long.BYTES;
+
+    /**
+     * The byte order of every number.
+     */
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * The alignment of the column data, in bytes.
+     */
+    static final int ALIGNMENT = 8;
+
+    /**
+     * The width of the hash values, in bytes: the MD5 digest encoded by the clients.
+     */
+    static final int HASH_WIDTH = 16;
+
+    /**
+     * The code of null dictionary values.
+     */
+    static final int NULL_CODE = 0;
+
+    /**
+     * Constructor.
+     */
+    private CorpusFormat() {
+    }
+
+    /**
+     * Returns the narrowest code width able to represent every code of a dictionary.
+     *
+     * @param entries the number of dictionary entries.
+     * @return the code width, in bytes.
+     */
+    static int getCodeWidth(int entries) {
+        if (entries < 0xFF) {
+            return Byte.BYTES;
+        } else if (entries < 0xFFFF) {
+            return Short.BYTES;
+        } else {
+            return Integer.BYTES;
+        }
+    }
+
+    /**
+     * Rounds a position up to the column data alignment.
+     *
+     * @param position the position.
+     * @return the aligned position.
+     */
+    static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,116 @@
+package br.org.eldorado.gpufingerprint.corpus;
+
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Conversion between the hashes sent by the clients and the binary values stored in the hash
+ * column. The Android client encodes its MD5 digests as URL-safe Base64 without padding, the iOS
+ * client as lowercase hexadecimal.
+ */
+final class CorpusHashes {
+    /**
+     * The encoding of the hashes sent as lowercase hexadecimal, as stored in the hash encoding
+     * column. Hashes encoded as Base64 have no encoding stored.
+     */
+    static final String HEX_ENCODING = "hex";
+
+    /**
+     * Constructor.
+     */
+    private CorpusHashes() {
+    }
+
+    /**
+     * Decodes a hash, checking it is exactly the encoding of an MD5 digest.
+     *
+     * @param hash the encoded hash.
+     * @return the digest.
+     * @throws IllegalArgumentException if the hash is not the encoding of an MD5 digest.
+     */
+    static byte[] decode(String hash) {
+        String encoding = getEncoding(hash);
+        byte[] digest;
+
+        try {
+            digest = HEX_ENCODING.equals(encoding) ? decodeHex(hash)
+                    : Base64.getUrlDecoder().decode(hash);
+        } catch (IllegalArgumentException e) {
+            digest = null;
+        }
+
+        if ((digest == null) || (digest.length != CorpusFormat.HASH_WIDTH)
+                || !encode(digest, encoding).equals(hash)) {
+            throw new IllegalArgumentException("Hash is not a Base64 or hexadecimal encoded MD5 "
+                    + "digest: " + hash);
+        }
+
+        return digest;
+    }
+
+    /**
+     * Returns the encoding of a hash, told apart by its length.
+     *
+     * @param hash the encoded hash.
+     * @return {@link #HEX_ENCODING} or null if the hash is encoded as Base64.
+     */
+    static String getEncoding(String hash) {
+        return ((hash != null) && (hash.length() == 2 * CorpusFormat.HASH_WIDTH))
+                ? HEX_ENCODING : null;
+    }
+
+    /**
+     * Encodes a digest the same way the Android client does.
+     *
+     * @param digest the digest.
+     * @return the encoded hash.
+     */
+    static String encode(byte[] digest) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    /**
+     * Encodes a digest the same way the client which sent it did.
+     *
+     * @param digest   the digest.
+     * @param encoding the encoding returned by {@link #getEncoding(String)}.
+     * @return the encoded hash.
+     */
+    static String encode(byte[] digest, String encoding) {
+        if (!HEX_ENCODING.equals(encoding)) {
+            return encode(digest);
+        }
+
+        StringBuilder hash = new StringBuilder(2 * digest.length);
+
+        for (byte value : digest) {
+            hash.append(String.format(Locale.ROOT, "%02x", value));
+        }
+
+        return hash.toString();
+    }
+
+    /**
+     * Decodes a hexadecimal string.
+     *
+     * @param hash the hexadecimal string, of even length.
+     * @return the decoded bytes.
+     * @throws IllegalArgumentException if the string has a non hexadecimal character.
+     */
+    private static byte[] decodeHex(String hash) {
+        byte[] bytes = new byte[hash.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hash.charAt(2 * i), 16);
+            int low = Character.digit(hash.charAt(2 * i + 1), 16);
+
+            if ((high < 0) || (low < 0)) {
+                throw new IllegalArgumentException("Not a hexadecimal string: " + hash);
+            }
+
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+
+        return bytes;
+    }
+}
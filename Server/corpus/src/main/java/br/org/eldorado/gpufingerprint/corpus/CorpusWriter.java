@@ -0,0 +1,395 @@
+package br.org.eldorado.gpufingerprint.corpus;
+
+import br.org.eldorado.gpufingerprint.ingest.FileFingerprintStore;
+import br.org.eldorado.gpufingerprint.ingest.FingerprintRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects fingerprint records and writes them as a corpus file, laid out as described by
+ * {@link CorpusFormat}.
+ */
+public final class CorpusWriter {
+    /**
+     * The initial capacity of the column buffers, in rows.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The encoded columns, keyed by column.
+     */
+    private final Map<CorpusColumn, ColumnBuffer> mColumns = new EnumMap<>(CorpusColumn.class);
+
+    /**
+     * The number of records added so far.
+     */
+    private int mRows;
+
+    /**
+     * Constructor.
+     */
+    public CorpusWriter() {
+        for (CorpusColumn column : CorpusColumn.values()) {
+            switch (column.getType()) {
+                case DICTIONARY:
+                    mColumns.put(column, new DictionaryBuffer(column));
+                    break;
+                case INT:
+                    mColumns.put(column, new IntegerBuffer(column));
+                    break;
+                default:
+                    mColumns.put(column, new HashBuffer());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds a record to the corpus.
+     *
+     * @param record the record.
+     * @throws IllegalArgumentException if the record hash is not a MD5 digest encoded as the
+     *                                  clients do, in which case no column is changed.
+     */
+    public void add(FingerprintRecord record) {
+        byte[] digest = CorpusHashes.decode(record.getHash());
+
+        for (ColumnBuffer buffer : mColumns.values()) {
+            buffer.add(record, digest, mRows);
+        }
+
+        mRows++;
+    }
+
+    /**
+     * Returns the number of records added so far.
+     *
+     * @return the number of records.
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Writes the corpus file, replacing it if it exists.
+     *
+     * @param path the path of the corpus file.
+     * @throws IOException if the file could not be written.
+     */
+    public void write(Path path) throws IOException {
+        List<ByteBuffer> data = new ArrayList<>();
+        int headerSize = CorpusFormat.HEADER_PREFIX_SIZE;
+
+        for (ColumnBuffer buffer : mColumns.values()) {
+            data.add(buffer.encode(mRows));
+            headerSize += Short.BYTES + buffer.getName().length + CorpusFormat.COLUMN_ENTRY_SIZE;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(CorpusFormat.BYTE_ORDER);
+        long[] offsets = new long[data.size()];
+        long offset = headerSize;
+
+        header.put(CorpusFormat.MAGIC).putInt(CorpusFormat.VERSION).putInt(mRows)
+                .putInt(mColumns.size());
+
+        int index = 0;
+
+        for (ColumnBuffer buffer : mColumns.values()) {
+            ByteBuffer columnData = data.get(index);
+
+            offset = CorpusFormat.align(offset);
+            offsets[index] = offset;
+
+            header.putShort((short) buffer.getName().length).put(buffer.getName())
+                    .put((byte) buffer.getColumn().getType().ordinal())
+                    .put((byte) buffer.getWidth()).putLong(offset)
+                    .putLong(columnData.remaining());
+
+            offset += columnData.remaining();
+            index++;
+        }
+
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+
+            for (int i = 0; i < data.size(); i++) {
+                writeFully(channel, data.get(i), offsets[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes a buffer at the given position of a channel.
+     *
+     * @param channel  the channel.
+     * @param buffer   the buffer.
+     * @param position the position.
+     * @throws IOException if the buffer could not be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Exports the records of an ingestion store into a corpus file. Records whose hash is not an
+     * encoded MD5 digest are skipped and counted.
+     *
+     * @param args the ingestion store file and the corpus file.
+     * @throws IOException if the store could not be read or the corpus could not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CorpusWriter <store file> <corpus file>");
+            System.exit(1);
+        }
+
+        CorpusWriter writer = new CorpusWriter();
+        int[] skipped = new int[1];
+
+        try (FileFingerprintStore store = new FileFingerprintStore(Paths.get(args[0]))) {
+            store.forEach(record -> {
+                try {
+                    writer.add(record);
+                } catch (IllegalArgumentException e) {
+                    skipped[0]++;
+                }
+            });
+        }
+
+        writer.write(Paths.get(args[1]));
+
+        System.out.println("Exported " + writer.getRows() + " records into " + args[1]
+                + ", skipped " + skipped[0] + " records with an unsupported hash");
+    }
+
+    /**
+     * The values of a column collected before being written.
+     */
+    private abstract static class ColumnBuffer {
+        /**
+         * The column.
+         */
+        private final CorpusColumn mColumn;
+
+        /**
+         * The UTF-8 bytes of the column name.
+         */
+        private final byte[] mName;
+
+        /**
+         * Constructor.
+         *
+         * @param column the column.
+         */
+        ColumnBuffer(CorpusColumn column) {
+            this.mColumn = column;
+            this.mName = column.getName().getBytes(StandardCharsets.UTF_8);
+        }
+
+        CorpusColumn getColumn() {
+            return mColumn;
+        }
+
+        byte[] getName() {
+            return mName;
+        }
+
+        /**
+         * Adds the column value of a record.
+         *
+         * @param record the record.
+         * @param digest the decoded record hash.
+         * @param row    the row of the record.
+         */
+        abstract void add(FingerprintRecord record, byte[] digest, int row);
+
+        /**
+         * Returns the width of each row value in bytes.
+         *
+         * @return the width.
+         */
+        abstract int getWidth();
+
+        /**
+         * Encodes the column data.
+         *
+         * @param rows the number of rows.
+         * @return the column data, ready to be written.
+         */
+        abstract ByteBuffer encode(int rows);
+    }
+
+    /**
+     * Dictionary-encoded string column.
+     */
+    private static final class DictionaryBuffer extends ColumnBuffer {
+        /**
+         * The code of each distinct value.
+         */
+        private final Map<String, Integer> mCodes = new HashMap<>();
+
+        /**
+         * The distinct values, in code order.
+         */
+        private final List<String> mEntries = new ArrayList<>();
+
+        /**
+         * The code of each row.
+         */
+        private int[] mRowCodes = new int[INITIAL_CAPACITY];
+
+        DictionaryBuffer(CorpusColumn column) {
+            super(column);
+        }
+
+        @Override
+        void add(FingerprintRecord record, byte[] digest, int row) {
+            String value = getColumn().getString(record);
+            int code = CorpusFormat.NULL_CODE;
+
+            if (value != null) {
+                code = mCodes.computeIfAbsent(value, key -> {
+                    mEntries.add(key);
+                    return mEntries.size();
+                });
+            }
+
+            if (row == mRowCodes.length) {
+                mRowCodes = Arrays.copyOf(mRowCodes, row * 2);
+            }
+
+            mRowCodes[row] = code;
+        }
+
+        @Override
+        int getWidth() {
+            return CorpusFormat.getCodeWidth(mEntries.size());
+        }
+
+        @Override
+        ByteBuffer encode(int rows) {
+            List<byte[]> entries = new ArrayList<>(mEntries.size());
+            int size = Integer.BYTES + rows * getWidth();
+
+            for (String entry : mEntries) {
+                byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+
+                entries.add(bytes);
+                size += Integer.BYTES + bytes.length;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(CorpusFormat.BYTE_ORDER);
+
+            buffer.putInt(entries.size());
+
+            for (byte[] entry : entries) {
+                buffer.putInt(entry.length).put(entry);
+            }
+
+            int width = getWidth();
+
+            for (int row = 0; row < rows; row++) {
+                if (width == Byte.BYTES) {
+                    buffer.put((byte) mRowCodes[row]);
+                } else if (width == Short.BYTES) {
+                    buffer.putShort((short) mRowCodes[row]);
+                } else {
+                    buffer.putInt(mRowCodes[row]);
+                }
+            }
+
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Fixed-width integer column.
+     */
+    private static final class IntegerBuffer extends ColumnBuffer {
+        /**
+         * The value of each row.
+         */
+        private int[] mValues = new int[INITIAL_CAPACITY];
+
+        IntegerBuffer(CorpusColumn column) {
+            super(column);
+        }
+
+        @Override
+        void add(FingerprintRecord record, byte[] digest, int row) {
+            if (row == mValues.length) {
+                mValues = Arrays.copyOf(mValues, row * 2);
+            }
+
+            mValues[row] = getColumn().getInt(record);
+        }
+
+        @Override
+        int getWidth() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        ByteBuffer encode(int rows) {
+            ByteBuffer buffer = ByteBuffer.allocate(rows * Integer.BYTES)
+                    .order(CorpusFormat.BYTE_ORDER);
+
+            buffer.asIntBuffer().put(mValues, 0, rows);
+
+            return buffer;
+        }
+    }
+
+    /**
+     * Fixed-width binary hash column.
+     */
+    private static final class HashBuffer extends ColumnBuffer {
+        /**
+         * The decoded hash of each row, back to back.
+         */
+        private byte[] mValues = new byte[INITIAL_CAPACITY * CorpusFormat.HASH_WIDTH];
+
+        HashBuffer() {
+            super(CorpusColumn.HASH);
+        }
+
+        @Override
+        void add(FingerprintRecord record, byte[] digest, int row) {
+            int offset = row * CorpusFormat.HASH_WIDTH;
+
+            if (offset == mValues.length) {
+                mValues = Arrays.copyOf(mValues, offset * 2);
+            }
+
+            System.arraycopy(digest, 0, mValues, offset, CorpusFormat.HASH_WIDTH);
+        }
+
+        @Override
+        int getWidth() {
+            return CorpusFormat.HASH_WIDTH;
+        }
+
+        @Override
+        ByteBuffer encode(int rows) {
+            return ByteBuffer.wrap(mValues, 0, rows * CorpusFormat.HASH_WIDTH);
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package br.org.eldorado.gpufingerprint.corpus;
+
+import br.org.eldorado.gpufingerprint.ingest.FingerprintRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of a corpus file written by {@link CorpusWriter}. The header is read on open and
+ * each column is memory-mapped on its own and scanned row by row, so analytics touch only the
+ * columns they need.
+ */
+public final class FingerprintCorpus implements Closeable {
+    /**
+     * The hash method of the MD5 digests of the PNG encoded image. Records without hash method
+     * were sent before the clients reported it and are hashed this way too.
+     */
+    public static final String PNG_HASH_METHOD = "png";
+
+    /**
+     * The channel of the corpus file.
+     */
+    private final FileChannel mChannel;
+
+    /**
+     * The number of rows.
+     */
+    private final int mRows;
+
+    /**
+     * The mapped data of each column.
+     */
+    private final Map<CorpusColumn, ByteBuffer> mData = new EnumMap<>(CorpusColumn.class);
+
+    /**
+     * The readers of the dictionary-encoded columns, whose dictionaries are decoded on open.
+     */
+    private final Map<CorpusColumn, DictionaryColumn> mDictionaries =
+            new EnumMap<>(CorpusColumn.class);
+
+    /**
+     * Constructor.
+     *
+     * @param channel the channel of the corpus file.
+     * @throws IOException if the file could not be read or is not a corpus file.
+     */
+    private FingerprintCorpus(FileChannel channel) throws IOException {
+        this.mChannel = channel;
+
+        long size = channel.size();
+        ByteBuffer header = readHeader(0, CorpusFormat.HEADER_PREFIX_SIZE);
+        byte[] magic = new byte[CorpusFormat.MAGIC.length];
+
+        header.get(magic);
+
+        if (!Arrays.equals(magic, CorpusFormat.MAGIC)
+                || (header.getInt() != CorpusFormat.VERSION)) {
+            throw new IOException("Not a fingerprint corpus file");
+        }
+
+        this.mRows = header.getInt();
+
+        Map<String, CorpusColumn> columnsByName = new HashMap<>();
+
+        for (CorpusColumn column : CorpusColumn.values()) {
+            columnsByName.put(column.getName(), column);
+        }
+
+        int columns = header.getInt();
+        long position = CorpusFormat.HEADER_PREFIX_SIZE;
+
+        for (int i = 0; i < columns; i++) {
+            int nameLength = Short.toUnsignedInt(readHeader(position, Short.BYTES).getShort());
+
+            position += Short.BYTES;
+
+            ByteBuffer entry = readHeader(position, nameLength + CorpusFormat.COLUMN_ENTRY_SIZE);
+            byte[] name = new byte[nameLength];
+
+            position += entry.remaining();
+            entry.get(name);
+
+            int type = entry.get();
+            int width = entry.get();
+            long offset = entry.getLong();
+            long length = entry.getLong();
+            String columnName = new String(name, StandardCharsets.UTF_8);
+            CorpusColumn column = columnsByName.get(columnName);
+
+            if ((offset < 0) || (length < 0) || (offset > size - length)) {
+                throw new IOException("Column " + columnName + " lies outside the file: offset "
+                        + offset + ", length " + length + ", file size " + size);
+            }
+
+            // Columns unknown to this version are skipped.
+            if ((column != null) && (column.getType().ordinal() == type)) {
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Column " + columnName + " is larger than 2 GiB: "
+                            + length + " bytes");
+                }
+
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+                        .order(CorpusFormat.BYTE_ORDER);
+
+                mData.put(column, data);
+
+                if (column.getType() == CorpusColumn.Type.DICTIONARY) {
+                    mDictionaries.put(column, new DictionaryColumn(data.duplicate()
+                            .order(CorpusFormat.BYTE_ORDER), width));
+                }
+            }
+        }
+
+        for (CorpusColumn column : CorpusColumn.values()) {
+            if (!mData.containsKey(column)) {
+                throw new IOException("Missing column " + column.getName());
+            }
+        }
+    }
+
+    /**
+     * Reads a part of the header.
+     *
+     * @param position the position of the part in the file.
+     * @param length   the length of the part.
+     * @return the part of the header.
+     * @throws IOException if the part could not be read or lies past the end of the file.
+     */
+    private ByteBuffer readHeader(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(CorpusFormat.BYTE_ORDER);
+
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Not a fingerprint corpus file: truncated header");
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    /**
+     * Opens a corpus file.
+     *
+     * @param path the path of the corpus file.
+     * @return the corpus.
+     * @throws IOException if the file could not be read or is not a corpus file.
+     */
+    public static FingerprintCorpus open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            return new FingerprintCorpus(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Returns a dictionary-encoded column.
+     *
+     * @param column the column, of type {@link CorpusColumn.Type#DICTIONARY}.
+     * @return the column reader.
+     */
+    public DictionaryColumn getDictionaryColumn(CorpusColumn column) {
+        checkType(column, CorpusColumn.Type.DICTIONARY);
+
+        return mDictionaries.get(column);
+    }
+
+    /**
+     * Returns an integer column.
+     *
+     * @param column the column, of type {@link CorpusColumn.Type#INT}.
+     * @return the column reader.
+     */
+    public IntColumn getIntColumn(CorpusColumn column) {
+        checkType(column, CorpusColumn.Type.INT);
+
+        return new IntColumn(mData.get(column));
+    }
+
+    /**
+     * Returns the hash column.
+     *
+     * @return the column reader.
+     */
+    public HashColumn getHashColumn() {
+        return new HashColumn(mData.get(CorpusColumn.HASH));
+    }
+
+    /**
+     * Reads a whole row. Meant for inspection; scans should read only the columns they need.
+     *
+     * @param row the row.
+     * @return the record stored on the row.
+     */
+    public FingerprintRecord getRecord(int row) {
+        return new FingerprintRecord.Builder()
+                .setHash(CorpusHashes.encode(getHashColumn().get(row),
+                        getDictionaryColumn(CorpusColumn.HASH_ENCODING).getValueAt(row)))
+                .setDeviceId(getDictionaryColumn(CorpusColumn.DEVICE_ID).getValueAt(row))
+                .setManufacturer(getDictionaryColumn(CorpusColumn.MANUFACTURER).getValueAt(row))
+                .setModel(getDictionaryColumn(CorpusColumn.MODEL).getValueAt(row))
+                .setGpuName(getDictionaryColumn(CorpusColumn.GPU_NAME).getValueAt(row))
+                .setGpuVendor(getDictionaryColumn(CorpusColumn.GPU_VENDOR).getValueAt(row))
+                .setOpenGLVersion(getDictionaryColumn(CorpusColumn.OPEN_GL_VERSION)
+                        .getValueAt(row))
+                .setOsVersion(getDictionaryColumn(CorpusColumn.OS_VERSION).getValueAt(row))
+                .setMethod(getDictionaryColumn(CorpusColumn.METHOD).getValueAt(row))
+                .setDate(getDictionaryColumn(CorpusColumn.DATE).getValueAt(row))
+                .setHashMethod(getDictionaryColumn(CorpusColumn.HASH_METHOD).getValueAt(row))
+                .setApiLevel(getIntColumn(CorpusColumn.API_LEVEL).get(row))
+                .build();
+    }
+
+    /**
+     * Counts the distinct {@link #PNG_HASH_METHOD} hashes of each value of a dictionary column.
+     *
+     * @param groupBy the dictionary column to group by.
+     * @return the number of distinct hashes keyed by column value; rows without value are keyed
+     * by null.
+     * @see #countDistinctHashes(CorpusColumn, String)
+     */
+    public Map<String, Integer> countDistinctHashes(CorpusColumn groupBy) {
+        return countDistinctHashes(groupBy, PNG_HASH_METHOD);
+    }
+
+    /**
+     * Counts the distinct hashes of each value of a dictionary column, e.g. the distinct hashes
+     * per GPU model. Only the rows hashed with the given method are counted, since hashes of
+     * different methods can't be compared. Rows are grouped by dictionary code with a counting
+     * sort and the hashes of each group are sorted, so no object is allocated per row. Hashes are
+     * compared by their first 64 bits, which is enough to tell MD5 digests apart.
+     *
+     * @param groupBy    the dictionary column to group by.
+     * @param hashMethod the hash method of the counted rows.
+     * @return the number of distinct hashes keyed by column value; rows without value are keyed
+     * by null.
+     */
+    public Map<String, Integer> countDistinctHashes(CorpusColumn groupBy, String hashMethod) {
+        DictionaryColumn groups = getDictionaryColumn(groupBy);
+        DictionaryColumn methods = getDictionaryColumn(CorpusColumn.HASH_METHOD);
+        HashColumn hashes = getHashColumn();
+        int methodCode = methods.findCode(hashMethod);
+        boolean withoutMethod = PNG_HASH_METHOD.equals(hashMethod);
+        int[] starts = new int[groups.size() + 2];
+        int rows = 0;
+
+        for (int row = 0; row < mRows; row++) {
+            if (isHashedWith(methods, row, methodCode, withoutMethod)) {
+                starts[groups.getCode(row) + 1]++;
+                rows++;
+            }
+        }
+
+        for (int code = 1; code < starts.length; code++) {
+            starts[code] += starts[code - 1];
+        }
+
+        int[] next = Arrays.copyOf(starts, starts.length - 1);
+        long[] keys = new long[rows];
+
+        for (int row = 0; row < mRows; row++) {
+            if (isHashedWith(methods, row, methodCode, withoutMethod)) {
+                keys[next[groups.getCode(row)]++] = hashes.getHigh(row);
+            }
+        }
+
+        Map<String, Integer> distinct = new HashMap<>();
+
+        for (int code = 0; code <= groups.size(); code++) {
+            int start = starts[code];
+            int end = starts[code + 1];
+
+            if (start == end) {
+                continue;
+            }
+
+            Arrays.sort(keys, start, end);
+
+            int count = 1;
+
+            for (int i = start + 1; i < end; i++) {
+                if (keys[i] != keys[i - 1]) {
+                    count++;
+                }
+            }
+
+            distinct.put(groups.getValue(code), count);
+        }
+
+        return distinct;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Returns whether a row was hashed with a method.
+     *
+     * @param methods       the hash method column.
+     * @param row           the row.
+     * @param methodCode    the code of the method, or -1 if no row has it.
+     * @param withoutMethod whether rows without method were hashed with it.
+     * @return true if the row was hashed with the method or false otherwise.
+     */
+    private static boolean isHashedWith(DictionaryColumn methods, int row, int methodCode,
+                                        boolean withoutMethod) {
+        int code = methods.getCode(row);
+
+        return (code == methodCode) || (withoutMethod && (code == CorpusFormat.NULL_CODE));
+    }
+
+    /**
+     * Throws if a column is not of the expected type.
+     *
+     * @param column the column.
+     * @param type   the expected type.
+     */
+    private static void checkType(CorpusColumn column, CorpusColumn.Type type) {
+        if (column.getType() != type) {
+            throw new IllegalArgumentException(column.getName() + " is not a " + type + " column");
+        }
+    }
+
+    /**
+     * Reader of a dictionary-encoded column.
+     */
+    public static final class DictionaryColumn {
+        /**
+         * The dictionary entries, in code order; entry i has code i + 1.
+         */
+        private final String[] mEntries;
+
+        /**
+         * The codes of the rows.
+         */
+        private final ByteBuffer mCodes;
+
+        /**
+         * The width of each code, in bytes.
+         */
+        private final int mWidth;
+
+        /**
+         * Constructor.
+         *
+         * @param data  the column data.
+         * @param width the width of each code, in bytes.
+         */
+        private DictionaryColumn(ByteBuffer data, int width) {
+            this.mEntries = new String[data.getInt()];
+
+            for (int i = 0; i < mEntries.length; i++) {
+                byte[] entry = new byte[data.getInt()];
+
+                data.get(entry);
+                mEntries[i] = new String(entry, StandardCharsets.UTF_8);
+            }
+
+            this.mCodes = data.slice().order(CorpusFormat.BYTE_ORDER);
+            this.mWidth = width;
+        }
+
+        /**
+         * Returns the number of dictionary entries.
+         *
+         * @return the number of distinct values.
+         */
+        public int size() {
+            return mEntries.length;
+        }
+
+        /**
+         * Returns the code of a row.
+         *
+         * @param row the row.
+         * @return the code, between zero (null) and {@link #size()}.
+         */
+        public int getCode(int row) {
+            switch (mWidth) {
+                case Byte.BYTES:
+                    return Byte.toUnsignedInt(mCodes.get(row));
+                case Short.BYTES:
+                    return Short.toUnsignedInt(mCodes.getShort(row * Short.BYTES));
+                default:
+                    return mCodes.getInt(row * Integer.BYTES);
+            }
+        }
+
+        /**
+         * Returns the value of a code.
+         *
+         * @param code the code.
+         * @return the value or null for the null code.
+         */
+        public String getValue(int code) {
+            return (code == CorpusFormat.NULL_CODE) ? null : mEntries[code - 1];
+        }
+
+        /**
+         * Returns the value of a row.
+         *
+         * @param row the row.
+         * @return the value or null if the row has no value.
+         */
+        public String getValueAt(int row) {
+            return getValue(getCode(row));
+        }
+
+        /**
+         * Returns the code of a value, so scans can compare codes instead of strings.
+         *
+         * @param value the value.
+         * @return the code or -1 if no row has the value.
+         */
+        public int findCode(String value) {
+            if (value == null) {
+                return CorpusFormat.NULL_CODE;
+            }
+
+            for (int i = 0; i < mEntries.length; i++) {
+                if (mEntries[i].equals(value)) {
+                    return i + 1;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Reader of an integer column.
+     */
+    public static final class IntColumn {
+        /**
+         * The column data.
+         */
+        private final ByteBuffer mValues;
+
+        /**
+         * Constructor.
+         *
+         * @param data the column data.
+         */
+        private IntColumn(ByteBuffer data) {
+            this.mValues = data;
+        }
+
+        /**
+         * Returns the value of a row.
+         *
+         * @param row the row.
+         * @return the value.
+         */
+        public int get(int row) {
+            return mValues.getInt(row * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Reader of the hash column.
+     */
+    public static final class HashColumn {
+        /**
+         * The column data.
+         */
+        private final ByteBuffer mValues;
+
+        /**
+         * Constructor.
+         *
+         * @param data the column data.
+         */
+        private HashColumn(ByteBuffer data) {
+            this.mValues = data;
+        }
+
+        /**
+         * Returns the first 64 bits of the hash of a row.
+         *
+         * @param row the row.
+         * @return the first 64 bits.
+         */
+        public long getHigh(int row) {
+            return mValues.getLong(row * CorpusFormat.HASH_WIDTH);
+        }
+
+        /**
+         * Returns the last 64 bits of the hash of a row.
+         *
+         * @param row the row.
+         * @return the last 64 bits.
+         */
+        public long getLow(int row) {
+            return mValues.getLong(row * CorpusFormat.HASH_WIDTH + Long.BYTES);
+        }
+
+        /**
+         * Returns the hash digest of a row.
+         *
+         * @param row the row.
+         * @return the digest.
+         */
+        public byte[] get(int row) {
+            byte[] digest = new byte[CorpusFormat.HASH_WIDTH];
+
+            mValues.get(row * CorpusFormat.HASH_WIDTH, digest);
+
+            return digest;
+        }
+
+        /**
+         * Returns the hash of a row, encoded as sent by the Android client.
+         *
+         * @param row the row.
+         * @return the encoded hash.
+         */
+        public String getString(int row) {
+            return CorpusHashes.encode(get(row));
+        }
+    }
+}
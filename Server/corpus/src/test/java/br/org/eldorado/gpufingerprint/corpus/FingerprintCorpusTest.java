@@ -0,0 +1,299 @@
+package br.org.eldorado.gpufingerprint.corpus;
+
+import br.org.eldorado.gpufingerprint.ingest.FileFingerprintStore;
+import br.org.eldorado.gpufingerprint.ingest.FingerprintRecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link CorpusWriter} and {@link FingerprintCorpus}.
+ */
+public class FingerprintCorpusTest {
+    private static final String[] GPU_NAMES = {"Adreno (TM) 630", "Mali-G72", "PowerVR Rogue GE8320"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsRoundTrip() throws Exception {
+        FingerprintRecord android = record("device-1", 1, "Mali-G72")
+                .setOsVersion("9")
+                .setApiLevel(28)
+                .setManufacturer("samsung")
+                .setModel("SM-G960F")
+                .setGpuVendor("ARM")
+                .setOpenGLVersion("OpenGL ES 3.2")
+                .build();
+        FingerprintRecord ios = record("result-1", 2, null)
+                .setOsVersion("12.2")
+                .setModel("iPhone10,3")
+                .setMethod("GLKit")
+                .setDate("2019-05-01")
+                .build();
+
+        try (FingerprintCorpus corpus = write(android, ios)) {
+            assertEquals(2, corpus.getRows());
+            assertEquals(android, corpus.getRecord(0));
+            assertEquals(ios, corpus.getRecord(1));
+        }
+    }
+
+    @Test
+    public void stringColumnsAreDictionaryEncoded() throws Exception {
+        FingerprintRecord[] records = new FingerprintRecord[1000];
+
+        for (int i = 0; i < records.length; i++) {
+            records[i] = record("device-" + i, i, GPU_NAMES[i % GPU_NAMES.length]).build();
+        }
+
+        try (FingerprintCorpus corpus = write(records)) {
+            FingerprintCorpus.DictionaryColumn gpuNames =
+                    corpus.getDictionaryColumn(CorpusColumn.GPU_NAME);
+
+            assertEquals(GPU_NAMES.length, gpuNames.size());
+            assertEquals(gpuNames.findCode("Mali-G72"), gpuNames.getCode(1));
+            assertEquals(-1, gpuNames.findCode("Unknown"));
+            assertEquals(0, gpuNames.findCode(null));
+            assertNull(corpus.getDictionaryColumn(CorpusColumn.MODEL).getValueAt(0));
+        }
+    }
+
+    @Test
+    public void distinctHashesPerGpu() throws Exception {
+        FingerprintRecord[] records = {
+                record("device-1", 1, "Mali-G72").build(),
+                record("device-2", 1, "Mali-G72").build(),
+                record("device-3", 2, "Mali-G72").build(),
+                record("device-4", 3, "Adreno (TM) 630").build(),
+                record("device-5", 4, null).build(),
+                record("device-6", 4, null).build()};
+
+        try (FingerprintCorpus corpus = write(records)) {
+            Map<String, Integer> distinct = corpus.countDistinctHashes(CorpusColumn.GPU_NAME);
+
+            assertEquals(3, distinct.size());
+            assertEquals(Integer.valueOf(2), distinct.get("Mali-G72"));
+            assertEquals(Integer.valueOf(1), distinct.get("Adreno (TM) 630"));
+            assertEquals(Integer.valueOf(1), distinct.get(null));
+        }
+    }
+
+    @Test
+    public void distinctHashesDontMixHashMethods() throws Exception {
+        FingerprintRecord[] records = {
+                record("device-1", 1, "Mali-G72").build(),
+                record("device-2", 2, "Mali-G72").setHashMethod("png").build(),
+                record("device-3", 3, "Mali-G72").setHashMethod("reduction").build(),
+                record("device-4", 3, "Mali-G72").setHashMethod("reduction").build(),
+                record("device-5", 4, "Adreno (TM) 630").setHashMethod("reduction").build()};
+
+        try (FingerprintCorpus corpus = write(records)) {
+            Map<String, Integer> png = corpus.countDistinctHashes(CorpusColumn.GPU_NAME);
+            Map<String, Integer> reduction = corpus.countDistinctHashes(CorpusColumn.GPU_NAME,
+                    "reduction");
+
+            assertEquals(1, png.size());
+            assertEquals(Integer.valueOf(2), png.get("Mali-G72"));
+            assertEquals(2, reduction.size());
+            assertEquals(Integer.valueOf(1), reduction.get("Mali-G72"));
+            assertEquals(Integer.valueOf(1), reduction.get("Adreno (TM) 630"));
+            assertTrue(corpus.countDistinctHashes(CorpusColumn.GPU_NAME, "unknown").isEmpty());
+            assertEquals("reduction", corpus.getRecord(2).getHashMethod());
+        }
+    }
+
+    @Test
+    public void wideDictionariesUseWiderCodes() throws Exception {
+        FingerprintRecord[] records = new FingerprintRecord[70000];
+
+        for (int i = 0; i < records.length; i++) {
+            records[i] = record("device-" + i, i, null).build();
+        }
+
+        try (FingerprintCorpus corpus = write(records)) {
+            FingerprintCorpus.DictionaryColumn deviceIds =
+                    corpus.getDictionaryColumn(CorpusColumn.DEVICE_ID);
+
+            assertEquals(records.length, deviceIds.size());
+            assertEquals("device-69999", deviceIds.getValueAt(69999));
+            assertEquals(Integer.valueOf(records.length),
+                    corpus.countDistinctHashes(CorpusColumn.MODEL).get(null));
+        }
+    }
+
+    @Test
+    public void iosHexadecimalHashesRoundTrip() throws Exception {
+        FingerprintRecord ios = new FingerprintRecord.Builder()
+                .setDeviceId("result-1")
+                .setHash("9e107d9d372bb6826bd81d3542a419d6")
+                .setOsVersion("12.2")
+                .setModel("iPhone10,3")
+                .setMethod("OpenGL")
+                .setImage("wood")
+                .setDate("2019-05-01")
+                .build();
+        FingerprintRecord android = record("device-1", 1, "Mali-G72").build();
+
+        try (FingerprintCorpus corpus = write(ios, android)) {
+            assertEquals(ios.getHash(), corpus.getRecord(0).getHash());
+            assertEquals(android.getHash(), corpus.getRecord(1).getHash());
+            assertEquals((byte) 0x9e, corpus.getHashColumn().get(0)[0]);
+            assertEquals((byte) 0xd6, corpus.getHashColumn().get(0)[CorpusFormat.HASH_WIDTH - 1]);
+        }
+    }
+
+    @Test
+    public void rejectedRecordsLeaveNoColumnBehind() throws Exception {
+        CorpusWriter writer = new CorpusWriter();
+        Path path = folder.newFile().toPath();
+
+        try {
+            writer.add(new FingerprintRecord.Builder()
+                    .setDeviceId("device-0")
+                    .setHash("9E107D9D372BB6826BD81D3542A419D6")
+                    .setGpuName("PowerVR Rogue GE8320")
+                    .build());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, writer.getRows());
+        }
+
+        writer.add(record("device-1", 1, "Mali-G72").build());
+        writer.write(path);
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(path)) {
+            assertEquals(1, corpus.getRows());
+            assertEquals(1, corpus.getDictionaryColumn(CorpusColumn.DEVICE_ID).size());
+            assertEquals(1, corpus.getDictionaryColumn(CorpusColumn.GPU_NAME).size());
+            assertEquals("device-1", corpus.getRecord(0).getDeviceId());
+        }
+    }
+
+    @Test
+    public void exportSkipsUnsupportedHashes() throws Exception {
+        Path storePath = folder.newFile().toPath();
+        Path corpusPath = folder.newFile().toPath();
+
+        try (FileFingerprintStore store = new FileFingerprintStore(storePath)) {
+            store.write(Arrays.asList(
+                    record("device-1", 1, "Mali-G72").build(),
+                    new FingerprintRecord.Builder().setDeviceId("device-2").setHash("abc").build(),
+                    record("device-3", 3, "Adreno (TM) 630").build()));
+        }
+
+        CorpusWriter.main(new String[]{storePath.toString(), corpusPath.toString()});
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath)) {
+            assertEquals(2, corpus.getRows());
+            assertEquals("device-3", corpus.getRecord(1).getDeviceId());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hashesMustBeEncodedDigests() {
+        new CorpusWriter().add(new FingerprintRecord.Builder()
+                .setDeviceId("device-1")
+                .setHash("abc")
+                .build());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws Exception {
+        Path path = folder.newFile().toPath();
+
+        Files.write(path, new byte[64]);
+
+        FingerprintCorpus.open(path);
+    }
+
+    @Test
+    public void columnsPastTheEndOfTheFileAreRejected() throws Exception {
+        Path path = writeFile(record("device-1", 1, "Mali-G72").build());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        try {
+            FingerprintCorpus.open(path);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("lies outside the file"));
+        }
+    }
+
+    @Test
+    public void columnsLargerThan2GiBAreRejected() throws Exception {
+        Path path = writeFile(record("device-1", 1, "Mali-G72").build());
+        byte[] name = CorpusColumn.HASH.getName().getBytes(StandardCharsets.UTF_8);
+        // The first column is the hash one: its length is the last field of its header entry.
+        long lengthPosition = CorpusFormat.HEADER_PREFIX_SIZE + Short.BYTES + name.length
+                + CorpusFormat.COLUMN_ENTRY_SIZE - Long.BYTES;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            // Sparse, so the column fits in the file without taking the space.
+            channel.write(ByteBuffer.allocate(Long.BYTES).order(CorpusFormat.BYTE_ORDER)
+                    .putLong(0, Integer.MAX_VALUE + 1L), lengthPosition);
+            channel.write(ByteBuffer.allocate(1), 3L * Integer.MAX_VALUE);
+        }
+
+        try {
+            FingerprintCorpus.open(path);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("larger than 2 GiB"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedHeadersAreRejected() throws Exception {
+        Path path = writeFile(record("device-1", 1, "Mali-G72").build());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(CorpusFormat.HEADER_PREFIX_SIZE + Short.BYTES);
+        }
+
+        FingerprintCorpus.open(path);
+    }
+
+    private FingerprintCorpus write(FingerprintRecord... records) throws Exception {
+        return FingerprintCorpus.open(writeFile(records));
+    }
+
+    private Path writeFile(FingerprintRecord... records) throws Exception {
+        CorpusWriter writer = new CorpusWriter();
+        Path path = folder.newFile().toPath();
+
+        for (FingerprintRecord record : records) {
+            writer.add(record);
+        }
+
+        writer.write(path);
+
+        return path;
+    }
+
+    private static FingerprintRecord.Builder record(String deviceId, long hash, String gpuName) {
+        byte[] digest = ByteBuffer.allocate(CorpusFormat.HASH_WIDTH).putLong(hash)
+                .putLong(~hash).array();
+
+        return new FingerprintRecord.Builder()
+                .setDeviceId(deviceId)
+                .setHash(CorpusHashes.encode(digest))
+                .setGpuName(gpuName);
+    }
+}
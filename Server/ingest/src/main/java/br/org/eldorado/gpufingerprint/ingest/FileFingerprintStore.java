@@ -0,0 +1,173 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Embedded fingerprint store which appends the records to a file, one JSON record per line. Each
+ * batch is written with a single write and a single sync, so the cost of the sync is shared by
+ * every record in the batch.
+ * <p>
+ * A batch which fails to be written is truncated away, so none of its records is stored and a
+ * later batch doesn't start on a torn line. A torn last line left by a crash is dropped when the
+ * file is opened and skipped when the file is read.
+ */
+public final class FileFingerprintStore implements FingerprintStore {
+    /**
+     * The size of the buffer the end of the file is scanned with for the last line terminator.
+     */
+    private static final int TAIL_BUFFER_SIZE = 8192;
+
+    /**
+     * The path of the file where the records are stored.
+     */
+    private final Path mPath;
+
+    /**
+     * The channel used to append the records.
+     */
+    private final FileChannel mChannel;
+
+    /**
+     * The size the file is to be truncated to before the next batch, since a failed batch could
+     * not be truncated away, or -1 if the file ends with a whole line.
+     */
+    private long mTornSize = -1;
+
+    /**
+     * Constructor. The file is created if it doesn't exist.
+     *
+     * @param path the path of the file where the records are stored.
+     * @throws IOException if the file could not be opened.
+     */
+    public FileFingerprintStore(Path path) throws IOException {
+        this(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param path    the path of the file where the records are stored.
+     * @param channel the channel used to append the records to the file.
+     * @throws IOException if a torn last line could not be dropped.
+     */
+    FileFingerprintStore(Path path, FileChannel channel) throws IOException {
+        this.mPath = path;
+        this.mChannel = channel;
+
+        try {
+            mChannel.truncate(getTerminatedSize());
+        } catch (IOException | RuntimeException e) {
+            mChannel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(List<FingerprintRecord> records) throws IOException {
+        StringBuilder lines = new StringBuilder();
+
+        for (FingerprintRecord record : records) {
+            lines.append(FingerprintCodec.toJson(record)).append('\n');
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        if (mTornSize >= 0) {
+            mChannel.truncate(mTornSize);
+            mTornSize = -1;
+        }
+
+        long size = mChannel.size();
+
+        try {
+            while (buffer.hasRemaining()) {
+                mChannel.write(buffer);
+            }
+
+            mChannel.force(false);
+        } catch (IOException | RuntimeException e) {
+            try {
+                mChannel.truncate(size);
+            } catch (IOException truncateException) {
+                mTornSize = size;
+                e.addSuppressed(truncateException);
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Reads every stored record. A last line without line terminator, torn by a failure the file
+     * could not be repaired from, is skipped.
+     *
+     * @param consumer the consumer of the records.
+     * @throws IOException if the records could not be read.
+     */
+    @Override
+    public void forEach(Consumer<FingerprintRecord> consumer) throws IOException {
+        boolean torn = getTerminatedSize() < Files.size(mPath);
+
+        try (BufferedReader reader = Files.newBufferedReader(mPath, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+
+            while (line != null) {
+                String next = reader.readLine();
+
+                if (!line.isEmpty() && ((next != null) || !torn)) {
+                    consumer.accept(FingerprintCodec.parse(line));
+                }
+
+                line = next;
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the file up to its last line terminator, excluding a torn last line.
+     *
+     * @return the size, in bytes.
+     * @throws IOException if the file could not be read.
+     */
+    private long getTerminatedSize() throws IOException {
+        try (FileChannel channel = FileChannel.open(mPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TAIL_BUFFER_SIZE);
+
+            for (long end = channel.size(); end > 0; end -= buffer.limit()) {
+                buffer.clear().limit((int) Math.min(TAIL_BUFFER_SIZE, end));
+
+                long start = end - buffer.limit();
+
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        throw new EOFException("Store file truncated while read");
+                    }
+                }
+
+                for (int i = buffer.limit() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        return start + i + 1;
+                    }
+                }
+            }
+
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
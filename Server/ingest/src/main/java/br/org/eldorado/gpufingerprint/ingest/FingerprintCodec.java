@@ -0,0 +1,275 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts fingerprint records from and to JSON. Both the attribute names written by the Android
+ * client into Firebase and the ones of the iOS {@code Result} are accepted; records are always
+ * written with the canonical names below.
+ * <p>
+ * The only attribute deliberately dropped is the iOS {@code base64}, the whole encoded image,
+ * which is already identified by its hash. Other unknown attributes are ignored.
+ */
+public final class FingerprintCodec {
+    private static final String DEVICE_ID = "deviceId";
+
+    private static final String HASH = "hash";
+
+    private static final String OS_VERSION = "osVersion";
+
+    private static final String API_LEVEL = "apiLevel";
+
+    private static final String MANUFACTURER = "manufacturer";
+
+    private static final String MODEL = "model";
+
+    private static final String GPU_NAME = "gpuName";
+
+    private static final String GPU_VENDOR = "gpuVendor";
+
+    private static final String OPEN_GL_VERSION = "openGLVersion";
+
+    private static final String METHOD = "method";
+
+    private static final String DATE = "date";
+
+    private static final String IMAGE = "image";
+
+    private static final String HASH_METHOD = "hashMethod";
+
+    private static final String FEATURES = "features";
+
+    private static final String GL_COMMANDS = "glCommands";
+
+    private static final String PRE_WARMED = "preWarmed";
+
+    private static final String SWEEP_HASHES = "sweepHashes";
+
+    /**
+     * Android name of {@link #OS_VERSION}.
+     */
+    private static final String ANDROID_VERSION = "androidVersion";
+
+    /**
+     * iOS name of {@link #HASH}.
+     */
+    private static final String IMAGE_HASH = "imageHash";
+
+    /**
+     * iOS name of {@link #MODEL}.
+     */
+    private static final String DEVICE = "device";
+
+    /**
+     * iOS result identifier, used as device id when the iOS client doesn't send one.
+     */
+    private static final String IMAGE_ID = "imageId";
+
+    /**
+     * Constructor.
+     */
+    private FingerprintCodec() {
+    }
+
+    /**
+     * Parses a submission, which is either a single JSON record or an array of records.
+     *
+     * @param json the submission body.
+     * @return the parsed records.
+     * @throws IllegalArgumentException if the submission is not valid JSON or a record lacks the
+     *                                  device id or the hash.
+     */
+    public static List<FingerprintRecord> parseSubmission(String json) {
+        JsonElement element;
+
+        try {
+            element = JsonParser.parseString(json);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed submission", e);
+        }
+
+        List<FingerprintRecord> records = new ArrayList<>();
+
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+
+            for (JsonElement item : array) {
+                records.add(fromJson(item));
+            }
+        } else {
+            records.add(fromJson(element));
+        }
+
+        return records;
+    }
+
+    /**
+     * Parses a single JSON record.
+     *
+     * @param json the JSON record.
+     * @return the parsed record.
+     * @throws IllegalArgumentException if the record is not valid JSON or lacks the device id or
+     *                                  the hash.
+     */
+    public static FingerprintRecord parse(String json) {
+        try {
+            return fromJson(JsonParser.parseString(json));
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed record", e);
+        }
+    }
+
+    /**
+     * Converts a record into a single line of JSON.
+     *
+     * @param record the record.
+     * @return the JSON record.
+     */
+    public static String toJson(FingerprintRecord record) {
+        JsonObject object = new JsonObject();
+
+        object.addProperty(DEVICE_ID, record.getDeviceId());
+        object.addProperty(HASH, record.getHash());
+        addString(object, OS_VERSION, record.getOsVersion());
+
+        if (record.getApiLevel() != 0) {
+            object.addProperty(API_LEVEL, record.getApiLevel());
+        }
+
+        addString(object, MANUFACTURER, record.getManufacturer());
+        addString(object, MODEL, record.getModel());
+        addString(object, GPU_NAME, record.getGpuName());
+        addString(object, GPU_VENDOR, record.getGpuVendor());
+        addString(object, OPEN_GL_VERSION, record.getOpenGLVersion());
+        addString(object, METHOD, record.getMethod());
+        addString(object, DATE, record.getDate());
+        addString(object, IMAGE, record.getImage());
+        addString(object, HASH_METHOD, record.getHashMethod());
+        addString(object, FEATURES, record.getFeatures());
+        addString(object, GL_COMMANDS, record.getGlCommands());
+
+        if (record.getPreWarmed() != null) {
+            object.addProperty(PRE_WARMED, record.getPreWarmed());
+        }
+
+        if (record.getSweepHashes() != null) {
+            JsonObject sweepHashes = new JsonObject();
+
+            record.getSweepHashes().forEach(sweepHashes::addProperty);
+            object.add(SWEEP_HASHES, sweepHashes);
+        }
+
+        return object.toString();
+    }
+
+    /**
+     * Converts a JSON element into a record.
+     *
+     * @param element the JSON element.
+     * @return the record.
+     * @throws IllegalArgumentException if the element is not an object or lacks the device id or
+     *                                  the hash.
+     */
+    private static FingerprintRecord fromJson(JsonElement element) {
+        if (!element.isJsonObject()) {
+            throw new IllegalArgumentException("Record is not a JSON object: " + element);
+        }
+
+        JsonObject object = element.getAsJsonObject();
+
+        try {
+            JsonElement apiLevel = object.get(API_LEVEL);
+            JsonElement preWarmed = object.get(PRE_WARMED);
+            JsonElement sweepHashes = object.get(SWEEP_HASHES);
+
+            return new FingerprintRecord.Builder()
+                    .setDeviceId(getString(object, DEVICE_ID, IMAGE_ID))
+                    .setHash(getString(object, HASH, IMAGE_HASH))
+                    .setOsVersion(getString(object, OS_VERSION, ANDROID_VERSION))
+                    .setApiLevel(isNull(apiLevel) ? 0 : apiLevel.getAsInt())
+                    .setManufacturer(getString(object, MANUFACTURER, null))
+                    .setModel(getString(object, MODEL, DEVICE))
+                    .setGpuName(getString(object, GPU_NAME, null))
+                    .setGpuVendor(getString(object, GPU_VENDOR, null))
+                    .setOpenGLVersion(getString(object, OPEN_GL_VERSION, null))
+                    .setMethod(getString(object, METHOD, null))
+                    .setDate(getString(object, DATE, null))
+                    .setImage(getString(object, IMAGE, null))
+                    .setHashMethod(getString(object, HASH_METHOD, null))
+                    .setFeatures(getString(object, FEATURES, null))
+                    .setGlCommands(getString(object, GL_COMMANDS, null))
+                    .setPreWarmed(isNull(preWarmed) ? null : preWarmed.getAsBoolean())
+                    .setSweepHashes(isNull(sweepHashes) ? null
+                            : getStringMap(sweepHashes.getAsJsonObject()))
+                    .build();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid record: " + object, e);
+        }
+    }
+
+    /**
+     * Returns a string attribute of a JSON object.
+     *
+     * @param object the JSON object.
+     * @param name   the attribute name.
+     * @param alias  the alternative attribute name, used when the attribute is missing, or null.
+     * @return the attribute value or null if both names are missing.
+     */
+    private static String getString(JsonObject object, String name, String alias) {
+        JsonElement value = object.get(name);
+
+        if (isNull(value) && (alias != null)) {
+            value = object.get(alias);
+        }
+
+        return isNull(value) ? null : value.getAsString();
+    }
+
+    /**
+     * Converts a JSON object of string attributes into a map.
+     *
+     * @param object the JSON object.
+     * @return the attributes, in the order they appear.
+     */
+    private static Map<String, String> getStringMap(JsonObject object) {
+        Map<String, String> map = new LinkedHashMap<>();
+
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().getAsString());
+        }
+
+        return map;
+    }
+
+    /**
+     * Adds a string attribute to a JSON object, unless its value is null.
+     *
+     * @param object the JSON object.
+     * @param name   the attribute name.
+     * @param value  the attribute value.
+     */
+    private static void addString(JsonObject object, String name, String value) {
+        if (value != null) {
+            object.addProperty(name, value);
+        }
+    }
+
+    /**
+     * Returns whether a JSON attribute is missing or null.
+     *
+     * @param value the attribute value.
+     * @return true if the attribute is missing or null or false otherwise.
+     */
+    private static boolean isNull(JsonElement value) {
+        return (value == null) || value.isJsonNull();
+    }
+}
@@ -0,0 +1,377 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A fingerprint submitted by a mobile device. Android and iOS clients send different attributes,
+ * so every attribute but the device id and the hash is optional.
+ */
+public final class FingerprintRecord {
+    /**
+     * The identifier of the device which submitted the fingerprint.
+     */
+    private final String mDeviceId;
+
+    /**
+     * The hash of the image drawn by the device.
+     */
+    private final String mHash;
+
+    /**
+     * The operating system version.
+     */
+    private final String mOsVersion;
+
+    /**
+     * The Android API level, or zero if unknown.
+     */
+    private final int mApiLevel;
+
+    /**
+     * The device manufacturer.
+     */
+    private final String mManufacturer;
+
+    /**
+     * The device model.
+     */
+    private final String mModel;
+
+    /**
+     * The GPU name, as reported by {@code GL_RENDERER}.
+     */
+    private final String mGpuName;
+
+    /**
+     * The GPU vendor, as reported by {@code GL_VENDOR}.
+     */
+    private final String mGpuVendor;
+
+    /**
+     * The OpenGL version, as reported by {@code GL_VERSION}.
+     */
+    private final String mOpenGLVersion;
+
+    /**
+     * The rendering method used to draw the image.
+     */
+    private final String mMethod;
+
+    /**
+     * The date the fingerprint was captured, as sent by the device.
+     */
+    private final String mDate;
+
+    /**
+     * The scene drawn by the iOS client.
+     */
+    private final String mImage;
+
+    /**
+     * How the Android client hashed the image: the PNG or the GPU reduced feature vector.
+     */
+    private final String mHashMethod;
+
+    /**
+     * The Base64 feature vector of the GPU reduction, if it was used.
+     */
+    private final String mFeatures;
+
+    /**
+     * The Base64 recording of the OpenGL calls which drew the image.
+     */
+    private final String mGlCommands;
+
+    /**
+     * Whether the OpenGL pixel buffer was pre-warmed before the capture, or null if unknown.
+     */
+    private final Boolean mPreWarmed;
+
+    /**
+     * The hash of the image drawn under each OpenGL configuration class, keyed by class name, or
+     * null if no sweep was run.
+     */
+    private final Map<String, String> mSweepHashes;
+
+    /**
+     * Constructor.
+     *
+     * @param builder the builder holding the record attributes.
+     */
+    private FingerprintRecord(Builder builder) {
+        this.mDeviceId = Objects.requireNonNull(builder.mDeviceId, "deviceId");
+        this.mHash = Objects.requireNonNull(builder.mHash, "hash");
+        this.mOsVersion = builder.mOsVersion;
+        this.mApiLevel = builder.mApiLevel;
+        this.mManufacturer = builder.mManufacturer;
+        this.mModel = builder.mModel;
+        this.mGpuName = builder.mGpuName;
+        this.mGpuVendor = builder.mGpuVendor;
+        this.mOpenGLVersion = builder.mOpenGLVersion;
+        this.mMethod = builder.mMethod;
+        this.mDate = builder.mDate;
+        this.mImage = builder.mImage;
+        this.mHashMethod = builder.mHashMethod;
+        this.mFeatures = builder.mFeatures;
+        this.mGlCommands = builder.mGlCommands;
+        this.mPreWarmed = builder.mPreWarmed;
+        this.mSweepHashes = (builder.mSweepHashes == null) ? null
+                : Collections.unmodifiableMap(new LinkedHashMap<>(builder.mSweepHashes));
+    }
+
+    public String getDeviceId() {
+        return mDeviceId;
+    }
+
+    public String getHash() {
+        return mHash;
+    }
+
+    public String getOsVersion() {
+        return mOsVersion;
+    }
+
+    public int getApiLevel() {
+        return mApiLevel;
+    }
+
+    public String getManufacturer() {
+        return mManufacturer;
+    }
+
+    public String getModel() {
+        return mModel;
+    }
+
+    public String getGpuName() {
+        return mGpuName;
+    }
+
+    public String getGpuVendor() {
+        return mGpuVendor;
+    }
+
+    public String getOpenGLVersion() {
+        return mOpenGLVersion;
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    public String getDate() {
+        return mDate;
+    }
+
+    public String getImage() {
+        return mImage;
+    }
+
+    public String getHashMethod() {
+        return mHashMethod;
+    }
+
+    public String getFeatures() {
+        return mFeatures;
+    }
+
+    public String getGlCommands() {
+        return mGlCommands;
+    }
+
+    public Boolean getPreWarmed() {
+        return mPreWarmed;
+    }
+
+    public Map<String, String> getSweepHashes() {
+        return mSweepHashes;
+    }
+
+    /**
+     * Returns the key used to deduplicate submissions: the same device sending the same hash more
+     * than once is stored only once.
+     *
+     * @return the deduplication key.
+     */
+    public String getKey() {
+        return mDeviceId + '\u0000' + mHash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof FingerprintRecord)) {
+            return false;
+        }
+
+        FingerprintRecord record = (FingerprintRecord) other;
+
+        return (mApiLevel == record.mApiLevel) && mDeviceId.equals(record.mDeviceId)
+                && mHash.equals(record.mHash) && Objects.equals(mOsVersion, record.mOsVersion)
+                && Objects.equals(mManufacturer, record.mManufacturer)
+                && Objects.equals(mModel, record.mModel)
+                && Objects.equals(mGpuName, record.mGpuName)
+                && Objects.equals(mGpuVendor, record.mGpuVendor)
+                && Objects.equals(mOpenGLVersion, record.mOpenGLVersion)
+                && Objects.equals(mMethod, record.mMethod) && Objects.equals(mDate, record.mDate)
+                && Objects.equals(mImage, record.mImage)
+                && Objects.equals(mHashMethod, record.mHashMethod)
+                && Objects.equals(mFeatures, record.mFeatures)
+                && Objects.equals(mGlCommands, record.mGlCommands)
+                && Objects.equals(mPreWarmed, record.mPreWarmed)
+                && Objects.equals(mSweepHashes, record.mSweepHashes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mDeviceId, mHash, mOsVersion, mApiLevel, mManufacturer, mModel,
+                mGpuName, mGpuVendor, mOpenGLVersion, mMethod, mDate, mImage, mHashMethod,
+                mFeatures, mGlCommands, mPreWarmed, mSweepHashes);
+    }
+
+    @Override
+    public String toString() {
+        return "FingerprintRecord{deviceId=" + mDeviceId + ", hash=" + mHash + ", model=" + mModel
+                + ", gpuName=" + mGpuName + "}";
+    }
+
+    /**
+     * Builder of {@link FingerprintRecord} instances.
+     */
+    public static final class Builder {
+        private String mDeviceId;
+
+        private String mHash;
+
+        private String mOsVersion;
+
+        private int mApiLevel;
+
+        private String mManufacturer;
+
+        private String mModel;
+
+        private String mGpuName;
+
+        private String mGpuVendor;
+
+        private String mOpenGLVersion;
+
+        private String mMethod;
+
+        private String mDate;
+
+        private String mImage;
+
+        private String mHashMethod;
+
+        private String mFeatures;
+
+        private String mGlCommands;
+
+        private Boolean mPreWarmed;
+
+        private Map<String, String> mSweepHashes;
+
+        public Builder setDeviceId(String deviceId) {
+            mDeviceId = deviceId;
+            return this;
+        }
+
+        public Builder setHash(String hash) {
+            mHash = hash;
+            return this;
+        }
+
+        public Builder setOsVersion(String osVersion) {
+            mOsVersion = osVersion;
+            return this;
+        }
+
+        public Builder setApiLevel(int apiLevel) {
+            mApiLevel = apiLevel;
+            return this;
+        }
+
+        public Builder setManufacturer(String manufacturer) {
+            mManufacturer = manufacturer;
+            return this;
+        }
+
+        public Builder setModel(String model) {
+            mModel = model;
+            return this;
+        }
+
+        public Builder setGpuName(String gpuName) {
+            mGpuName = gpuName;
+            return this;
+        }
+
+        public Builder setGpuVendor(String gpuVendor) {
+            mGpuVendor = gpuVendor;
+            return this;
+        }
+
+        public Builder setOpenGLVersion(String openGLVersion) {
+            mOpenGLVersion = openGLVersion;
+            return this;
+        }
+
+        public Builder setMethod(String method) {
+            mMethod = method;
+            return this;
+        }
+
+        public Builder setDate(String date) {
+            mDate = date;
+            return this;
+        }
+
+        public Builder setImage(String image) {
+            mImage = image;
+            return this;
+        }
+
+        public Builder setHashMethod(String hashMethod) {
+            mHashMethod = hashMethod;
+            return this;
+        }
+
+        public Builder setFeatures(String features) {
+            mFeatures = features;
+            return this;
+        }
+
+        public Builder setGlCommands(String glCommands) {
+            mGlCommands = glCommands;
+            return this;
+        }
+
+        public Builder setPreWarmed(Boolean preWarmed) {
+            mPreWarmed = preWarmed;
+            return this;
+        }
+
+        public Builder setSweepHashes(Map<String, String> sweepHashes) {
+            mSweepHashes = sweepHashes;
+            return this;
+        }
+
+        /**
+         * Builds the record.
+         *
+         * @return the record.
+         * @throws NullPointerException if the device id or the hash were not set.
+         */
+        public FingerprintRecord build() {
+            return new FingerprintRecord(this);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Durable storage of ingested fingerprint records. Records are written in batches by a single
+ * thread, so implementations don't need to support concurrent writes.
+ */
+public interface FingerprintStore extends Closeable {
+    /**
+     * Writes a batch of records. The records must be durable when the method returns.
+     *
+     * @param records the records to be written.
+     * @throws IOException if the records could not be written.
+     */
+    void write(List<FingerprintRecord> records) throws IOException;
+
+    /**
+     * Reads every stored record, in the order they were written.
+     *
+     * @param consumer the consumer of the records.
+     * @throws IOException if the records could not be read.
+     */
+    void forEach(Consumer<FingerprintRecord> consumer) throws IOException;
+}
@@ -0,0 +1,255 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the records of concurrent submissions and writes them to a {@link FingerprintStore} in
+ * batches from a single thread, so many submissions share a single durable write. A batch is
+ * written as soon as it holds the maximum number of records or its oldest submission has waited for
+ * the maximum delay.
+ */
+final class GroupCommitter implements AutoCloseable {
+    /**
+     * The name of the thread which writes the batches.
+     */
+    private static final String THREAD_NAME = "GroupCommitter";
+
+    /**
+     * Queued after the last submission to stop the thread which writes the batches.
+     */
+    private static final PendingWrite CLOSE = new PendingWrite(new ArrayList<>());
+
+    /**
+     * The store where the records are written.
+     */
+    private final FingerprintStore mStore;
+
+    /**
+     * The maximum number of records in a batch.
+     */
+    private final int mMaxBatchRecords;
+
+    /**
+     * The maximum time a submission waits for other submissions to join its batch, in nanoseconds.
+     */
+    private final long mMaxBatchDelayNanos;
+
+    /**
+     * The metrics updated on each written batch.
+     */
+    private final IngestionMetrics mMetrics;
+
+    /**
+     * The submissions waiting to be written.
+     */
+    private final BlockingQueue<PendingWrite> mQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * The thread which writes the batches.
+     */
+    private final Thread mThread;
+
+    /**
+     * Flag which indicates whether the committer was closed.
+     */
+    private boolean mClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param store              the store where the records are written.
+     * @param maxBatchRecords    the maximum number of records in a batch.
+     * @param maxBatchDelayNanos the maximum time a submission waits for other submissions to join
+     *                           its batch, in nanoseconds.
+     * @param metrics            the metrics updated on each written batch.
+     */
+    GroupCommitter(FingerprintStore store, int maxBatchRecords, long maxBatchDelayNanos,
+                   IngestionMetrics metrics) {
+        this.mStore = store;
+        this.mMaxBatchRecords = maxBatchRecords;
+        this.mMaxBatchDelayNanos = maxBatchDelayNanos;
+        this.mMetrics = metrics;
+        this.mThread = new Thread(this::run, THREAD_NAME);
+    }
+
+    /**
+     * Starts the thread which writes the batches.
+     */
+    void start() {
+        mThread.start();
+    }
+
+    /**
+     * Submits records to be written on the next batch.
+     *
+     * @param records the records to be written.
+     * @return a future completed once the records are durable, or completed exceptionally if they
+     * could not be written.
+     */
+    CompletableFuture<Void> submit(List<FingerprintRecord> records) {
+        PendingWrite write = new PendingWrite(records);
+
+        synchronized (mQueue) {
+            if (mClosed) {
+                write.mFuture.completeExceptionally(new IOException("Committer closed"));
+            } else {
+                mQueue.add(write);
+            }
+        }
+
+        return write.mFuture;
+    }
+
+    /**
+     * Writes the pending submissions and stops the thread which writes the batches.
+     *
+     * @throws InterruptedException if interrupted while waiting for the thread to stop.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (mQueue) {
+            if (mClosed) {
+                return;
+            }
+
+            mClosed = true;
+            mQueue.add(CLOSE);
+        }
+
+        mThread.join();
+    }
+
+    /**
+     * Writes batches until the committer is closed. The thread is never interrupted while
+     * writing, since an interrupt closes the file channels of the store.
+     */
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>();
+        boolean closed = false;
+
+        while (!closed) {
+            PendingWrite first = takeUninterruptibly();
+
+            if (first == CLOSE) {
+                break;
+            }
+
+            batch.add(first);
+
+            int records = first.mRecords.size();
+            long deadline = System.nanoTime() + mMaxBatchDelayNanos;
+
+            while (records < mMaxBatchRecords) {
+                PendingWrite next = pollUninterruptibly(deadline - System.nanoTime());
+
+                if (next == null) {
+                    break;
+                }
+
+                if (next == CLOSE) {
+                    closed = true;
+                    break;
+                }
+
+                batch.add(next);
+                records += next.mRecords.size();
+            }
+
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits for the next submission, ignoring interrupts.
+     *
+     * @return the next submission.
+     */
+    private PendingWrite takeUninterruptibly() {
+        while (true) {
+            try {
+                return mQueue.take();
+            } catch (InterruptedException e) {
+                // Only closing the committer stops the thread.
+            }
+        }
+    }
+
+    /**
+     * Waits up to the given time for the next submission, ignoring interrupts.
+     *
+     * @param timeoutNanos the maximum time to wait, in nanoseconds.
+     * @return the next submission or null if the time elapsed.
+     */
+    private PendingWrite pollUninterruptibly(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        while (true) {
+            try {
+                return mQueue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // Only closing the committer stops the thread.
+            }
+        }
+    }
+
+    /**
+     * Writes a batch and completes the futures of its submissions.
+     *
+     * @param batch the submissions to be written.
+     */
+    private void commit(List<PendingWrite> batch) {
+        List<FingerprintRecord> records = new ArrayList<>();
+
+        for (PendingWrite write : batch) {
+            records.addAll(write.mRecords);
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            mStore.write(records);
+            mMetrics.onBatchCommitted(records.size(), System.nanoTime() - start);
+
+            for (PendingWrite write : batch) {
+                write.mFuture.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            mMetrics.onBatchFailed();
+
+            for (PendingWrite write : batch) {
+                write.mFuture.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * The records of a submission waiting to be written.
+     */
+    private static final class PendingWrite {
+        /**
+         * The records to be written.
+         */
+        private final List<FingerprintRecord> mRecords;
+
+        /**
+         * The future completed once the records are written.
+         */
+        private final CompletableFuture<Void> mFuture = new CompletableFuture<>();
+
+        /**
+         * Constructor.
+         *
+         * @param records the records to be written.
+         */
+        private PendingWrite(List<FingerprintRecord> records) {
+            this.mRecords = records;
+        }
+    }
+}
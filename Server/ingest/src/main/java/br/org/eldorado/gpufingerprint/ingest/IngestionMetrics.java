@@ -0,0 +1,177 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency counters of the ingestion service. Counters are updated concurrently by
+ * the request threads and read through {@link #snapshot()}.
+ */
+public final class IngestionMetrics {
+    /**
+     * The time the metrics started being collected, in nanoseconds.
+     */
+    private final long mStartNanos = System.nanoTime();
+
+    private final LongAdder mRequests = new LongAdder();
+
+    private final LongAdder mRejectedRequests = new LongAdder();
+
+    private final LongAdder mFailedRequests = new LongAdder();
+
+    private final LongAdder mRecordsAccepted = new LongAdder();
+
+    private final LongAdder mRecordsDuplicated = new LongAdder();
+
+    private final LongAdder mBatchesCommitted = new LongAdder();
+
+    private final LongAdder mBatchesFailed = new LongAdder();
+
+    private final LongAdder mBatchedRecords = new LongAdder();
+
+    private final Latency mRequestLatency = new Latency();
+
+    private final Latency mCommitLatency = new Latency();
+
+    /**
+     * Records a request which submitted valid records.
+     *
+     * @param accepted     the number of new records.
+     * @param duplicated   the number of records already submitted by the same device.
+     * @param elapsedNanos the time taken to handle the request, in nanoseconds.
+     */
+    void onRequestHandled(int accepted, int duplicated, long elapsedNanos) {
+        mRequests.increment();
+        mRecordsAccepted.add(accepted);
+        mRecordsDuplicated.add(duplicated);
+        mRequestLatency.record(elapsedNanos);
+    }
+
+    /**
+     * Records a request rejected because of an invalid submission.
+     */
+    void onRequestRejected() {
+        mRequests.increment();
+        mRejectedRequests.increment();
+    }
+
+    /**
+     * Records a request whose records could not be stored.
+     */
+    void onRequestFailed() {
+        mRequests.increment();
+        mFailedRequests.increment();
+    }
+
+    /**
+     * Records a batch written to the store.
+     *
+     * @param records      the number of records in the batch.
+     * @param elapsedNanos the time taken to write the batch, in nanoseconds.
+     */
+    void onBatchCommitted(int records, long elapsedNanos) {
+        mBatchesCommitted.increment();
+        mBatchedRecords.add(records);
+        mCommitLatency.record(elapsedNanos);
+    }
+
+    /**
+     * Records a batch which could not be written to the store.
+     */
+    void onBatchFailed() {
+        mBatchesFailed.increment();
+    }
+
+    /**
+     * Returns the number of new records accepted so far.
+     *
+     * @return the number of accepted records.
+     */
+    public long getRecordsAccepted() {
+        return mRecordsAccepted.sum();
+    }
+
+    /**
+     * Returns the number of duplicated records dropped so far.
+     *
+     * @return the number of duplicated records.
+     */
+    public long getRecordsDuplicated() {
+        return mRecordsDuplicated.sum();
+    }
+
+    /**
+     * Returns the number of batches written to the store so far.
+     *
+     * @return the number of committed batches.
+     */
+    public long getBatchesCommitted() {
+        return mBatchesCommitted.sum();
+    }
+
+    /**
+     * Returns a snapshot of every counter, keyed by name. Latencies are in microseconds.
+     *
+     * @return the counters snapshot.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new LinkedHashMap<>();
+        double uptimeSeconds = (System.nanoTime() - mStartNanos)
+                / (double) TimeUnit.SECONDS.toNanos(1);
+        long accepted = mRecordsAccepted.sum();
+        long batches = mBatchesCommitted.sum();
+
+        snapshot.put("requests", mRequests.sum());
+        snapshot.put("rejectedRequests", mRejectedRequests.sum());
+        snapshot.put("failedRequests", mFailedRequests.sum());
+        snapshot.put("recordsAccepted", accepted);
+        snapshot.put("recordsDuplicated", mRecordsDuplicated.sum());
+        snapshot.put("recordsPerSecond", uptimeSeconds > 0 ? accepted / uptimeSeconds : 0);
+        snapshot.put("batchesCommitted", batches);
+        snapshot.put("recordsPerBatch", batches > 0 ? mBatchedRecords.sum() / (double) batches : 0);
+        snapshot.put("batchesFailed", mBatchesFailed.sum());
+        mRequestLatency.addTo(snapshot, "requestLatency");
+        mCommitLatency.addTo(snapshot, "commitLatency");
+
+        return snapshot;
+    }
+
+    /**
+     * Latency counter keeping the number of samples, their total and their maximum.
+     */
+    private static final class Latency {
+        private final LongAdder mCount = new LongAdder();
+
+        private final LongAdder mTotalNanos = new LongAdder();
+
+        private final LongAccumulator mMaxNanos = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Records a latency sample.
+         *
+         * @param nanos the latency, in nanoseconds.
+         */
+        void record(long nanos) {
+            mCount.increment();
+            mTotalNanos.add(nanos);
+            mMaxNanos.accumulate(nanos);
+        }
+
+        /**
+         * Adds the mean and maximum latencies, in microseconds, to a snapshot.
+         *
+         * @param snapshot the counters snapshot.
+         * @param name     the latency name, used as prefix of the snapshot keys.
+         */
+        void addTo(Map<String, Number> snapshot, String name) {
+            long count = mCount.sum();
+
+            snapshot.put(name + "MeanMicros",
+                    count > 0 ? TimeUnit.NANOSECONDS.toMicros(mTotalNanos.sum() / count) : 0);
+            snapshot.put(name + "MaxMicros", TimeUnit.NANOSECONDS.toMicros(mMaxNanos.get()));
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP service ingesting the fingerprints submitted by the Android and iOS clients. Each request
+ * is handled on its own virtual thread, which blocks until its records are durable.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li>{@code POST /fingerprints}: a single JSON record or an array of records, of at most
+ * {@link #MAX_SUBMISSION_BYTES}. Records already submitted with the same device id and hash are
+ * dropped. Answers with the number of accepted and duplicated records once all of them are durable,
+ * including duplicates still being written by a concurrent submission; if any of them couldn't be
+ * written, answers with a retryable error.</li>
+ * <li>{@code GET /metrics}: the throughput and latency counters of {@link IngestionMetrics}.</li>
+ * </ul>
+ */
+public final class IngestionServer implements AutoCloseable {
+    /**
+     * The path where fingerprints are submitted.
+     */
+    public static final String FINGERPRINTS_PATH = "/fingerprints";
+
+    /**
+     * The path where the metrics are published.
+     */
+    public static final String METRICS_PATH = "/metrics";
+
+    /**
+     * The default maximum number of records in a batch written to the store.
+     */
+    public static final int DEFAULT_MAX_BATCH_RECORDS = 1000;
+
+    /**
+     * The default maximum time a submission waits for other submissions to join its batch, in
+     * milliseconds.
+     */
+    public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 2;
+
+    /**
+     * The maximum size of a submission, in bytes.
+     */
+    public static final int MAX_SUBMISSION_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default port of the service.
+     */
+    private static final int DEFAULT_PORT = 8080;
+
+    /**
+     * The default file of the embedded store.
+     */
+    private static final String DEFAULT_STORE_FILE = "fingerprints.jsonl";
+
+    private static final int HTTP_OK = 200;
+
+    private static final int HTTP_BAD_REQUEST = 400;
+
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+
+    private static final int HTTP_PAYLOAD_TOO_LARGE = 413;
+
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The commit future of every durable record.
+     */
+    private static final CompletableFuture<Void> DURABLE = CompletableFuture.completedFuture(null);
+
+    /**
+     * The store where the records are written.
+     */
+    private final FingerprintStore mStore;
+
+    /**
+     * The service metrics.
+     */
+    private final IngestionMetrics mMetrics = new IngestionMetrics();
+
+    /**
+     * The deduplication keys of every stored or pending record, mapped to the future completed
+     * once the record is durable.
+     */
+    private final Map<String, CompletableFuture<Void>> mKeys = new ConcurrentHashMap<>();
+
+    /**
+     * The executor running each request on its own virtual thread.
+     */
+    private final ExecutorService mExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * The committer writing the records in batches.
+     */
+    private final GroupCommitter mCommitter;
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer mServer;
+
+    /**
+     * Constructor, using the default batch limits.
+     *
+     * @param address the address the service listens to; port zero picks a free port.
+     * @param store   the store where the records are written.
+     * @throws IOException if the address could not be bound.
+     */
+    public IngestionServer(InetSocketAddress address, FingerprintStore store) throws IOException {
+        this(address, store, DEFAULT_MAX_BATCH_RECORDS, DEFAULT_MAX_BATCH_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param address             the address the service listens to; port zero picks a free port.
+     * @param store               the store where the records are written.
+     * @param maxBatchRecords     the maximum number of records in a batch written to the store.
+     * @param maxBatchDelayMillis the maximum time a submission waits for other submissions to join
+     *                            its batch, in milliseconds.
+     * @throws IOException if the address could not be bound.
+     */
+    public IngestionServer(InetSocketAddress address, FingerprintStore store, int maxBatchRecords,
+                           long maxBatchDelayMillis) throws IOException {
+        this.mStore = store;
+        this.mCommitter = new GroupCommitter(store, maxBatchRecords,
+                TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis), mMetrics);
+        this.mServer = HttpServer.create(address, 0);
+
+        mServer.setExecutor(mExecutor);
+        mServer.createContext(FINGERPRINTS_PATH, this::handleSubmission);
+        mServer.createContext(METRICS_PATH, this::handleMetrics);
+    }
+
+    /**
+     * Loads the deduplication keys of the stored records and starts the service.
+     *
+     * @throws IOException if the stored records could not be read.
+     */
+    public void start() throws IOException {
+        mStore.forEach(record -> mKeys.put(record.getKey(), DURABLE));
+        mCommitter.start();
+        mServer.start();
+    }
+
+    /**
+     * Returns the port the service listens to.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * Returns the service metrics.
+     *
+     * @return the metrics.
+     */
+    public IngestionMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Stops the service, waiting for the pending records to be written. The store is not closed.
+     *
+     * @throws InterruptedException if interrupted while waiting for the pending records.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        mServer.stop(0);
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        mCommitter.close();
+    }
+
+    /**
+     * Handles a fingerprint submission.
+     *
+     * @param exchange the HTTP exchange.
+     * @throws IOException if the response could not be sent.
+     */
+    private void handleSubmission(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, HTTP_METHOD_NOT_ALLOWED, "Method not allowed");
+            return;
+        }
+
+        byte[] body = readSubmission(exchange);
+
+        if (body == null) {
+            mMetrics.onRequestRejected();
+            sendError(exchange, HTTP_PAYLOAD_TOO_LARGE, "Submission larger than "
+                    + MAX_SUBMISSION_BYTES + " bytes");
+            return;
+        }
+
+        List<FingerprintRecord> records;
+
+        try {
+            records = FingerprintCodec.parseSubmission(new String(body, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            mMetrics.onRequestRejected();
+            sendError(exchange, HTTP_BAD_REQUEST, e.getMessage());
+            return;
+        }
+
+        List<FingerprintRecord> accepted = new ArrayList<>(records.size());
+        List<CompletableFuture<Void>> claims = new ArrayList<>(records.size());
+        List<CompletableFuture<Void>> duplicates = new ArrayList<>();
+
+        for (FingerprintRecord record : records) {
+            CompletableFuture<Void> claim = new CompletableFuture<>();
+            CompletableFuture<Void> existing = mKeys.putIfAbsent(record.getKey(), claim);
+
+            if (existing == null) {
+                accepted.add(record);
+                claims.add(claim);
+            } else {
+                duplicates.add(existing);
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            try {
+                mCommitter.submit(accepted).get();
+            } catch (InterruptedException | ExecutionException e) {
+                for (int i = 0; i < accepted.size(); i++) {
+                    mKeys.remove(accepted.get(i).getKey(), claims.get(i));
+                    claims.get(i).completeExceptionally(e);
+                }
+
+                mMetrics.onRequestFailed();
+                sendError(exchange, HTTP_SERVICE_UNAVAILABLE, "Records could not be stored");
+                return;
+            }
+
+            for (int i = 0; i < accepted.size(); i++) {
+                mKeys.replace(accepted.get(i).getKey(), claims.get(i), DURABLE);
+                claims.get(i).complete(null);
+            }
+        }
+
+        try {
+            // Duplicates are only reported once the submission which claimed them is durable.
+            for (CompletableFuture<Void> duplicate : duplicates) {
+                duplicate.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            mMetrics.onRequestFailed();
+            sendError(exchange, HTTP_SERVICE_UNAVAILABLE, "Duplicated records could not be "
+                    + "stored by a concurrent submission");
+            return;
+        }
+
+        int duplicated = records.size() - accepted.size();
+        JsonObject response = new JsonObject();
+
+        response.addProperty("accepted", accepted.size());
+        response.addProperty("duplicated", duplicated);
+
+        mMetrics.onRequestHandled(accepted.size(), duplicated, System.nanoTime() - start);
+        send(exchange, HTTP_OK, response.toString());
+    }
+
+    /**
+     * Reads the body of a submission, refusing bodies larger than {@link #MAX_SUBMISSION_BYTES}
+     * without holding them in memory. The rest of a refused body is discarded, so the client reads
+     * the response instead of having the connection reset under it.
+     *
+     * @param exchange the HTTP exchange.
+     * @return the body or null if it is too large.
+     * @throws IOException if the body could not be read.
+     */
+    private static byte[] readSubmission(HttpExchange exchange) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        boolean tooLarge = false;
+
+        try {
+            tooLarge = (contentLength != null)
+                    && (Long.parseLong(contentLength) > MAX_SUBMISSION_BYTES);
+        } catch (NumberFormatException e) {
+            // The bounded read below still applies.
+        }
+
+        try (InputStream input = exchange.getRequestBody()) {
+            if (!tooLarge) {
+                byte[] body = input.readNBytes(MAX_SUBMISSION_BYTES + 1);
+
+                if (body.length <= MAX_SUBMISSION_BYTES) {
+                    return body;
+                }
+            }
+
+            input.transferTo(OutputStream.nullOutputStream());
+
+            return null;
+        }
+    }
+
+    /**
+     * Handles a metrics request.
+     *
+     * @param exchange the HTTP exchange.
+     * @throws IOException if the response could not be sent.
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, HTTP_METHOD_NOT_ALLOWED, "Method not allowed");
+            return;
+        }
+
+        send(exchange, HTTP_OK, GSON.toJson(mMetrics.snapshot()));
+    }
+
+    /**
+     * Sends a JSON error response.
+     *
+     * @param exchange the HTTP exchange.
+     * @param status   the HTTP status.
+     * @param message  the error message.
+     * @throws IOException if the response could not be sent.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message)
+            throws IOException {
+        JsonObject response = new JsonObject();
+
+        response.addProperty("error", message);
+
+        send(exchange, status, response.toString());
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange the HTTP exchange.
+     * @param status   the HTTP status.
+     * @param json     the response body.
+     * @throws IOException if the response could not be sent.
+     */
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * Runs the service with the embedded file store.
+     *
+     * @param args the optional port and store file.
+     * @throws Exception if the service could not be started.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path file = Paths.get((args.length > 1) ? args[1] : DEFAULT_STORE_FILE);
+        FileFingerprintStore store = new FileFingerprintStore(file);
+        IngestionServer server = new IngestionServer(new InetSocketAddress(port), store);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                store.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }));
+
+        server.start();
+
+        System.out.println("Ingesting fingerprints on port " + server.getPort() + " into "
+                + file.toAbsolutePath());
+    }
+}
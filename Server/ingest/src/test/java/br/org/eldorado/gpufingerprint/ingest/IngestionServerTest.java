@@ -0,0 +1,477 @@
+package br.org.eldorado.gpufingerprint.ingest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link IngestionServer} running locally with the embedded file store.
+ */
+public class IngestionServerTest {
+    private static final String ANDROID_RECORD = "{\"deviceId\":\"device-1\",\"androidVersion\":\"9\","
+            + "\"apiLevel\":28,\"manufacturer\":\"samsung\",\"model\":\"SM-G960F\","
+            + "\"gpuName\":\"Mali-G72\",\"gpuVendor\":\"ARM\",\"openGLVersion\":\"OpenGL ES 3.2\","
+            + "\"hash\":\"abc\"}";
+
+    private static final String IOS_RESULT = "{\"device\":\"iPhone10,3\",\"osVersion\":\"12.2\","
+            + "\"imageHash\":\"def\",\"method\":\"GLKit\",\"image\":\"wood\",\"date\":\"2019-05-01\","
+            + "\"imageId\":\"result-1\",\"base64\":\"\"}";
+
+    /**
+     * The time given to concurrent submissions to reach the server, in milliseconds.
+     */
+    private static final long QUEUE_DELAY_MILLIS = 500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    private Path storeFile;
+
+    private FileFingerprintStore store;
+
+    private IngestionServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        storeFile = folder.getRoot().toPath().resolve("fingerprints.jsonl");
+        store = new FileFingerprintStore(storeFile);
+        server = new IngestionServer(new InetSocketAddress("localhost", 0), store);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        store.close();
+    }
+
+    @Test
+    public void singleSubmissionsFromBothClientsAreStored() throws Exception {
+        assertEquals("{\"accepted\":1,\"duplicated\":0}", post(ANDROID_RECORD).body());
+        assertEquals("{\"accepted\":1,\"duplicated\":0}", post(IOS_RESULT).body());
+
+        List<FingerprintRecord> stored = readStore();
+
+        assertEquals(2, stored.size());
+        assertEquals("Mali-G72", stored.get(0).getGpuName());
+        assertEquals("9", stored.get(0).getOsVersion());
+        assertEquals(28, stored.get(0).getApiLevel());
+        assertEquals("result-1", stored.get(1).getDeviceId());
+        assertEquals("def", stored.get(1).getHash());
+        assertEquals("iPhone10,3", stored.get(1).getModel());
+    }
+
+    @Test
+    public void duplicatesAreDroppedWithinAndAcrossSubmissions() throws Exception {
+        post(ANDROID_RECORD);
+
+        String batch = "[" + ANDROID_RECORD + "," + IOS_RESULT + "," + IOS_RESULT + "]";
+
+        assertEquals("{\"accepted\":1,\"duplicated\":2}", post(batch).body());
+        assertEquals(2, readStore().size());
+        assertEquals(2, server.getMetrics().getRecordsAccepted());
+        assertEquals(2, server.getMetrics().getRecordsDuplicated());
+    }
+
+    @Test
+    public void concurrentSubmissionsShareBatches() throws Exception {
+        GatedStore gatedStore = restartWithGatedStore();
+        int submissions = 200;
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+
+        responses.add(client.sendAsync(request(ANDROID_RECORD.replace("device-1", "device-0")),
+                HttpResponse.BodyHandlers.ofString()));
+        gatedStore.mEntered.await();
+
+        // Every other submission queues up while the first batch is held by the store.
+        for (int i = 1; i < submissions; i++) {
+            String record = ANDROID_RECORD.replace("device-1", "device-" + i);
+
+            responses.add(client.sendAsync(request(record), HttpResponse.BodyHandlers.ofString()));
+        }
+
+        Thread.sleep(QUEUE_DELAY_MILLIS);
+        gatedStore.mOpen.countDown();
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+        }
+
+        assertEquals(submissions, readStore().size());
+        assertTrue(server.getMetrics().getBatchesCommitted() < submissions);
+    }
+
+    @Test
+    public void duplicatesOfAFailedCommitAreNotConfirmed() throws Exception {
+        GatedStore gatedStore = restartWithGatedStore();
+
+        gatedStore.mFailing = true;
+
+        CompletableFuture<HttpResponse<String>> first = client.sendAsync(request(ANDROID_RECORD),
+                HttpResponse.BodyHandlers.ofString());
+
+        gatedStore.mEntered.await();
+
+        CompletableFuture<HttpResponse<String>> second = client.sendAsync(request(ANDROID_RECORD),
+                HttpResponse.BodyHandlers.ofString());
+
+        Thread.sleep(QUEUE_DELAY_MILLIS);
+        gatedStore.mOpen.countDown();
+
+        assertEquals(503, first.get().statusCode());
+        assertEquals(503, second.get().statusCode());
+        assertTrue(readStore().isEmpty());
+
+        gatedStore.mFailing = false;
+
+        assertEquals("{\"accepted\":1,\"duplicated\":0}", post(ANDROID_RECORD).body());
+    }
+
+    @Test
+    public void oversizedSubmissionsAreRejected() throws Exception {
+        char[] body = new char[IngestionServer.MAX_SUBMISSION_BYTES + 1];
+
+        Arrays.fill(body, ' ');
+
+        assertEquals(413, post(new String(body)).statusCode());
+        assertTrue(readStore().isEmpty());
+    }
+
+    @Test
+    public void clientDiagnosticsAreStoredAndTheIosImageIsDropped() throws Exception {
+        String androidRecord = ANDROID_RECORD.replace("}", ",\"hashMethod\":\"reduction\","
+                + "\"features\":\"AAEC\",\"glCommands\":\"AQID\",\"preWarmed\":true,"
+                + "\"sweepHashes\":{\"RGBA8888\":\"h1\",\"RGB565\":\"h2\"}}");
+
+        post(androidRecord);
+        post(IOS_RESULT);
+
+        List<FingerprintRecord> stored = readStore();
+
+        assertEquals("reduction", stored.get(0).getHashMethod());
+        assertEquals("AAEC", stored.get(0).getFeatures());
+        assertEquals("AQID", stored.get(0).getGlCommands());
+        assertEquals(Boolean.TRUE, stored.get(0).getPreWarmed());
+        assertEquals(Arrays.asList("RGBA8888", "RGB565"),
+                new ArrayList<>(stored.get(0).getSweepHashes().keySet()));
+        assertEquals("h2", stored.get(0).getSweepHashes().get("RGB565"));
+        assertEquals("wood", stored.get(1).getImage());
+        assertNull(stored.get(1).getPreWarmed());
+        assertFalse(new String(Files.readAllBytes(storeFile), StandardCharsets.UTF_8)
+                .contains("base64"));
+    }
+
+    @Test
+    public void storedKeysAreLoadedOnStart() throws Exception {
+        post(ANDROID_RECORD);
+        server.close();
+
+        server = new IngestionServer(new InetSocketAddress("localhost", 0), store);
+        server.start();
+
+        assertEquals("{\"accepted\":0,\"duplicated\":1}", post(ANDROID_RECORD).body());
+    }
+
+    @Test
+    public void failedBatchesLeaveNoTornLineBehind() throws Exception {
+        TornChannel channel = new TornChannel(FileChannel.open(storeFile,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        FileFingerprintStore tornStore = new FileFingerprintStore(storeFile, channel);
+
+        server.close();
+        server = new IngestionServer(new InetSocketAddress("localhost", 0), tornStore);
+        server.start();
+
+        String batch = "[" + ANDROID_RECORD.replace("device-1", "device-2") + ","
+                + ANDROID_RECORD.replace("device-1", "device-3") + "]";
+
+        assertEquals(200, post(ANDROID_RECORD).statusCode());
+
+        channel.mFailing = true;
+
+        assertEquals(503, post(batch).statusCode());
+
+        channel.mFailing = false;
+
+        assertEquals(200, post(ANDROID_RECORD.replace("device-1", "device-4")).statusCode());
+        assertEquals(2, readStore().size());
+
+        server.close();
+        tornStore.close();
+        server = new IngestionServer(new InetSocketAddress("localhost", 0), store);
+        server.start();
+
+        assertEquals("{\"accepted\":2,\"duplicated\":0}", post(batch).body());
+    }
+
+    @Test
+    public void tornLastLinesAreDroppedOnStart() throws Exception {
+        post(ANDROID_RECORD);
+        server.close();
+        store.close();
+
+        Files.write(storeFile, "{\"deviceId\":\"device-2\",\"ha".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        store = new FileFingerprintStore(storeFile);
+
+        assertEquals(1, readStore().size());
+
+        server = new IngestionServer(new InetSocketAddress("localhost", 0), store);
+        server.start();
+
+        assertEquals("{\"accepted\":0,\"duplicated\":1}", post(ANDROID_RECORD).body());
+        assertEquals(200, post(ANDROID_RECORD.replace("device-1", "device-2")).statusCode());
+        assertEquals(2, readStore().size());
+    }
+
+    @Test
+    public void tornLastLinesAreSkippedWhenRead() throws Exception {
+        post(ANDROID_RECORD);
+        Files.write(storeFile, "{\"deviceId\":\"device-2\",\"ha".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        assertEquals(1, readStore().size());
+    }
+
+    @Test
+    public void invalidSubmissionsAreRejected() throws Exception {
+        assertEquals(400, post("{\"deviceId\":\"device-1\"}").statusCode());
+        assertEquals(400, post("not json").statusCode());
+        assertTrue(readStore().isEmpty());
+    }
+
+    @Test
+    public void metricsArePublished() throws Exception {
+        post(ANDROID_RECORD);
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                uri(IngestionServer.METRICS_PATH)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"recordsAccepted\":1"));
+    }
+
+    /**
+     * Replaces the server by one writing through a {@link GatedStore}.
+     */
+    private GatedStore restartWithGatedStore() throws Exception {
+        GatedStore gatedStore = new GatedStore(store);
+
+        server.close();
+        server = new IngestionServer(new InetSocketAddress("localhost", 0), gatedStore);
+        server.start();
+
+        return gatedStore;
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        return client.send(request(body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String body) {
+        return HttpRequest.newBuilder(uri(IngestionServer.FINGERPRINTS_PATH))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private List<FingerprintRecord> readStore() throws Exception {
+        List<FingerprintRecord> records = new ArrayList<>();
+
+        store.forEach(records::add);
+
+        return records;
+    }
+
+    /**
+     * Store which holds every write until opened, optionally failing them.
+     */
+    private static final class GatedStore implements FingerprintStore {
+        private final FingerprintStore mDelegate;
+
+        private final CountDownLatch mEntered = new CountDownLatch(1);
+
+        private final CountDownLatch mOpen = new CountDownLatch(1);
+
+        private volatile boolean mFailing;
+
+        GatedStore(FingerprintStore delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void write(List<FingerprintRecord> records) throws IOException {
+            mEntered.countDown();
+
+            try {
+                mOpen.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+
+            if (mFailing) {
+                throw new IOException("Store unavailable");
+            }
+
+            mDelegate.write(records);
+        }
+
+        @Override
+        public void forEach(Consumer<FingerprintRecord> consumer) throws IOException {
+            mDelegate.forEach(consumer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            mDelegate.close();
+        }
+    }
+
+    /**
+     * Channel which, once failing, writes half of a buffer and then fails, as a full disk does.
+     */
+    private static final class TornChannel extends FileChannel {
+        private final FileChannel mDelegate;
+
+        private volatile boolean mFailing;
+
+        TornChannel(FileChannel delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!mFailing) {
+                return mDelegate.write(src);
+            }
+
+            ByteBuffer half = src.duplicate();
+
+            half.limit(half.position() + half.remaining() / 2);
+            src.position(half.limit());
+            mDelegate.write(half);
+
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return mDelegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return mDelegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return mDelegate.read(dst, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return mDelegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            mDelegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return mDelegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            mDelegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            mDelegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target)
+                throws IOException {
+            return mDelegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count)
+                throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return mDelegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return mDelegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return mDelegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            mDelegate.close();
+        }
+    }
+}
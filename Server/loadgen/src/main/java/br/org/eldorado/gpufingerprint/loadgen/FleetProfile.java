@@ -0,0 +1,330 @@
+package br.org.eldorado.gpufingerprint.loadgen;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Distributions the synthetic fleet of {@link LoadGenerator} is drawn from, read from JSON:
+ * <pre>
+ * {
+ *   "devices": [{"weight": 18, "manufacturer": "samsung", "model": "SM-G960F",
+ *                "gpuName": "Mali-G72", "gpuVendor": "ARM", "openGLVersion": "OpenGL ES 3.2"}],
+ *   "osVersions": [{"weight": 35, "osVersion": "9", "apiLevel": 28}],
+ *   "hashCollisionRate": 0.7,
+ *   "resubmissionRate": 0.05
+ * }
+ * </pre>
+ * Weights are relative. The hash collision rate is the probability of a device drawing the same
+ * image as every other device of its kind, instead of a unique one. The resubmission rate is the
+ * probability of a submission repeating an earlier record, as a client retrying an upload does.
+ */
+public final class FleetProfile {
+    /**
+     * The resource holding the default profile.
+     */
+    private static final String DEFAULT_PROFILE_RESOURCE = "default-fleet.json";
+
+    private static final String DEVICES = "devices";
+
+    private static final String OS_VERSIONS = "osVersions";
+
+    private static final String WEIGHT = "weight";
+
+    private static final String MANUFACTURER = "manufacturer";
+
+    private static final String MODEL = "model";
+
+    private static final String GPU_NAME = "gpuName";
+
+    private static final String GPU_VENDOR = "gpuVendor";
+
+    private static final String OPEN_GL_VERSION = "openGLVersion";
+
+    private static final String OS_VERSION = "osVersion";
+
+    private static final String API_LEVEL = "apiLevel";
+
+    private static final String HASH_COLLISION_RATE = "hashCollisionRate";
+
+    private static final String RESUBMISSION_RATE = "resubmissionRate";
+
+    private final Distribution<Device> mDevices;
+
+    private final Distribution<OsVersion> mOsVersions;
+
+    private final double mHashCollisionRate;
+
+    private final double mResubmissionRate;
+
+    /**
+     * Constructor.
+     *
+     * @param devices           the device distribution.
+     * @param osVersions        the OS version distribution.
+     * @param hashCollisionRate the probability of a device drawing the image shared by its kind.
+     * @param resubmissionRate  the probability of a submission repeating an earlier record.
+     */
+    private FleetProfile(Distribution<Device> devices, Distribution<OsVersion> osVersions,
+                         double hashCollisionRate, double resubmissionRate) {
+        this.mDevices = devices;
+        this.mOsVersions = osVersions;
+        this.mHashCollisionRate = hashCollisionRate;
+        this.mResubmissionRate = resubmissionRate;
+    }
+
+    /**
+     * Returns the default profile, a fleet dominated by a handful of popular Adreno and Mali
+     * devices.
+     *
+     * @return the default profile.
+     */
+    public static FleetProfile getDefault() {
+        try (InputStream input = FleetProfile.class.getResourceAsStream(
+                DEFAULT_PROFILE_RESOURCE)) {
+            return parse(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Default fleet profile could not be read", e);
+        }
+    }
+
+    /**
+     * Reads a profile from a JSON file.
+     *
+     * @param path the file path.
+     * @return the profile.
+     * @throws IOException              if the file could not be read.
+     * @throws IllegalArgumentException if the file is not a valid profile.
+     */
+    public static FleetProfile load(Path path) throws IOException {
+        return parse(Files.readString(path));
+    }
+
+    /**
+     * Parses a JSON profile.
+     *
+     * @param json the JSON profile.
+     * @return the profile.
+     * @throws IllegalArgumentException if the JSON is not a valid profile.
+     */
+    public static FleetProfile parse(String json) {
+        try {
+            JsonObject object = JsonParser.parseString(json).getAsJsonObject();
+
+            return new FleetProfile(
+                    parseDistribution(object.getAsJsonArray(DEVICES),
+                            device -> new Device(getString(device, MANUFACTURER),
+                                    getString(device, MODEL), getString(device, GPU_NAME),
+                                    getString(device, GPU_VENDOR),
+                                    getString(device, OPEN_GL_VERSION))),
+                    parseDistribution(object.getAsJsonArray(OS_VERSIONS),
+                            osVersion -> new OsVersion(getString(osVersion, OS_VERSION),
+                                    osVersion.get(API_LEVEL).getAsInt())),
+                    getRate(object, HASH_COLLISION_RATE),
+                    getRate(object, RESUBMISSION_RATE));
+        } catch (JsonParseException | IllegalStateException | ClassCastException
+                 | NullPointerException | UnsupportedOperationException
+                 | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid fleet profile", e);
+        }
+    }
+
+    /**
+     * Returns the probability of a device drawing the image shared by every device of its kind.
+     *
+     * @return the hash collision rate.
+     */
+    public double getHashCollisionRate() {
+        return mHashCollisionRate;
+    }
+
+    /**
+     * Returns the probability of a submission repeating an earlier record.
+     *
+     * @return the resubmission rate.
+     */
+    public double getResubmissionRate() {
+        return mResubmissionRate;
+    }
+
+    /**
+     * Returns the distinct devices of the profile.
+     *
+     * @return the devices.
+     */
+    List<Device> getDevices() {
+        return mDevices.mValues;
+    }
+
+    /**
+     * Draws a device.
+     *
+     * @param random the source of randomness.
+     * @return the device.
+     */
+    Device pickDevice(Random random) {
+        return mDevices.pick(random);
+    }
+
+    /**
+     * Draws an OS version.
+     *
+     * @param random the source of randomness.
+     * @return the OS version.
+     */
+    OsVersion pickOsVersion(Random random) {
+        return mOsVersions.pick(random);
+    }
+
+    /**
+     * Parses a weighted distribution.
+     *
+     * @param array  the JSON array of weighted entries.
+     * @param parser the parser of an entry.
+     * @param <T>    the type of the entries.
+     * @return the distribution.
+     * @throws IllegalArgumentException if the array is empty or a weight is not positive.
+     */
+    private static <T> Distribution<T> parseDistribution(JsonArray array,
+                                                         Function<JsonObject, T> parser) {
+        if (array.isEmpty()) {
+            throw new IllegalArgumentException("Empty distribution");
+        }
+
+        List<T> values = new ArrayList<>(array.size());
+        double[] cumulativeWeights = new double[array.size()];
+        double total = 0;
+
+        for (int i = 0; i < array.size(); i++) {
+            JsonObject entry = array.get(i).getAsJsonObject();
+            double weight = entry.get(WEIGHT).getAsDouble();
+
+            if (!(weight > 0)) {
+                throw new IllegalArgumentException("Weight is not positive: " + entry);
+            }
+
+            values.add(parser.apply(entry));
+            total += weight;
+            cumulativeWeights[i] = total;
+        }
+
+        return new Distribution<>(values, cumulativeWeights);
+    }
+
+    /**
+     * Returns a probability attribute of a JSON object.
+     *
+     * @param object the JSON object.
+     * @param name   the attribute name.
+     * @return the probability, or zero if the attribute is missing.
+     * @throws IllegalArgumentException if the value is not within [0, 1].
+     */
+    private static double getRate(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        double rate = (value == null) ? 0 : value.getAsDouble();
+
+        if (!((rate >= 0) && (rate <= 1))) {
+            throw new IllegalArgumentException(name + " is not within [0, 1]: " + rate);
+        }
+
+        return rate;
+    }
+
+    /**
+     * Returns a string attribute of a JSON object.
+     *
+     * @param object the JSON object.
+     * @param name   the attribute name.
+     * @return the attribute value or null if it is missing.
+     */
+    private static String getString(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+
+        return ((value == null) || value.isJsonNull()) ? null : value.getAsString();
+    }
+
+    /**
+     * Kind of device: every device of a kind reports the same hardware and driver.
+     */
+    static final class Device {
+        final String mManufacturer;
+
+        final String mModel;
+
+        final String mGpuName;
+
+        final String mGpuVendor;
+
+        final String mOpenGLVersion;
+
+        Device(String manufacturer, String model, String gpuName, String gpuVendor,
+               String openGLVersion) {
+            this.mManufacturer = manufacturer;
+            this.mModel = model;
+            this.mGpuName = gpuName;
+            this.mGpuVendor = gpuVendor;
+            this.mOpenGLVersion = openGLVersion;
+        }
+    }
+
+    /**
+     * OS version reported by a device.
+     */
+    static final class OsVersion {
+        final String mOsVersion;
+
+        final int mApiLevel;
+
+        OsVersion(String osVersion, int apiLevel) {
+            this.mOsVersion = osVersion;
+            this.mApiLevel = apiLevel;
+        }
+    }
+
+    /**
+     * Weighted distribution, drawn by a binary search of the cumulative weights.
+     *
+     * @param <T> the type of the values.
+     */
+    private static final class Distribution<T> {
+        private final List<T> mValues;
+
+        private final double[] mCumulativeWeights;
+
+        Distribution(List<T> values, double[] cumulativeWeights) {
+            this.mValues = Collections.unmodifiableList(values);
+            this.mCumulativeWeights = cumulativeWeights;
+        }
+
+        T pick(Random random) {
+            double target = random.nextDouble() * mCumulativeWeights[mCumulativeWeights.length - 1];
+            int low = 0;
+            int high = mCumulativeWeights.length - 1;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (mCumulativeWeights[middle] > target) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+
+            return mValues.get(low);
+        }
+    }
+}
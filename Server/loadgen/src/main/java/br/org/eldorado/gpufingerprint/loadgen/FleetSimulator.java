@@ -0,0 +1,171 @@
+package br.org.eldorado.gpufingerprint.loadgen;
+
+import br.org.eldorado.gpufingerprint.ingest.FingerprintRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthesises the records a fleet drawn from a {@link FleetProfile} submits, shaped as the ones
+ * written by {@code MainActivity.generateImageAndSaveData} with the GPU reduction and the
+ * configuration sweep enabled, the largest records the client sends. Besides the fingerprint
+ * attributes, each record carries the client diagnostics: the hash method, the Base64 feature
+ * vector, one hash per swept configuration class, the pre-warm flag and the Base64 recorded OpenGL
+ * calls, the latter being random filler of the size the renderer records. Not thread-safe.
+ */
+final class FleetSimulator {
+    /**
+     * The number of bytes of a device id, which encodes into the 11 characters of a Firebase
+     * instance id.
+     */
+    private static final int DEVICE_ID_BYTES = 8;
+
+    /**
+     * The number of bytes of an MD5 image hash.
+     */
+    private static final int HASH_BYTES = 16;
+
+    /**
+     * The number of bytes of the feature vector, {@code FingerprintReducer.OUTPUT_BYTES}.
+     */
+    private static final int FEATURES_BYTES = 1024;
+
+    /**
+     * The number of bytes of the recorded OpenGL calls, about the size {@code OpenGLRenderer}
+     * records while creating its surface and drawing the first frame.
+     */
+    private static final int GL_COMMANDS_BYTES = 1600;
+
+    /**
+     * The hash method of the records, which carry a feature vector.
+     */
+    private static final String HASH_METHOD = "reduction";
+
+    /**
+     * The names of the configuration classes swept by the client, {@code OpenGLConfigClass}.
+     */
+    private static final String[] CONFIG_CLASSES = {"RGBA8888", "RGBA8888_MSAA_2X",
+            "RGBA8888_MSAA_4X", "RGB888", "RGB565"};
+
+    /**
+     * The number of most recent records a resubmission is drawn from.
+     */
+    private static final int RESUBMISSION_WINDOW = 4096;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final FleetProfile mProfile;
+
+    private final Random mRandom;
+
+    /**
+     * The hash shared by the devices of each kind which collide.
+     */
+    private final Map<FleetProfile.Device, String> mSharedHashes = new IdentityHashMap<>();
+
+    /**
+     * The most recent records, in a ring buffer.
+     */
+    private final FingerprintRecord[] mRecentRecords = new FingerprintRecord[RESUBMISSION_WINDOW];
+
+    /**
+     * The number of records synthesised so far.
+     */
+    private long mRecords;
+
+    /**
+     * Constructor.
+     *
+     * @param profile the fleet profile.
+     * @param seed    the seed of the random draws, so a fleet can be reproduced.
+     */
+    FleetSimulator(FleetProfile profile, long seed) {
+        this.mProfile = profile;
+        this.mRandom = new Random(seed);
+
+        for (FleetProfile.Device device : profile.getDevices()) {
+            mSharedHashes.put(device, md5(device.mManufacturer + '\u0000' + device.mModel
+                    + '\u0000' + device.mGpuName + '\u0000' + device.mOpenGLVersion));
+        }
+    }
+
+    /**
+     * Synthesises the next submitted record.
+     *
+     * @return the record.
+     */
+    FingerprintRecord next() {
+        FingerprintRecord record;
+
+        if ((mRecords > 0) && (mRandom.nextDouble() < mProfile.getResubmissionRate())) {
+            record = mRecentRecords[mRandom.nextInt(
+                    (int) Math.min(mRecords, RESUBMISSION_WINDOW))];
+        } else {
+            FleetProfile.Device device = mProfile.pickDevice(mRandom);
+            FleetProfile.OsVersion osVersion = mProfile.pickOsVersion(mRandom);
+            String hash = (mRandom.nextDouble() < mProfile.getHashCollisionRate())
+                    ? mSharedHashes.get(device) : randomId(HASH_BYTES);
+            Map<String, String> sweepHashes = new LinkedHashMap<>();
+
+            for (String configClass : CONFIG_CLASSES) {
+                sweepHashes.put(configClass, randomId(HASH_BYTES));
+            }
+
+            record = new FingerprintRecord.Builder()
+                    .setDeviceId(randomId(DEVICE_ID_BYTES))
+                    .setHash(hash)
+                    .setOsVersion(osVersion.mOsVersion)
+                    .setApiLevel(osVersion.mApiLevel)
+                    .setManufacturer(device.mManufacturer)
+                    .setModel(device.mModel)
+                    .setGpuName(device.mGpuName)
+                    .setGpuVendor(device.mGpuVendor)
+                    .setOpenGLVersion(device.mOpenGLVersion)
+                    .setHashMethod(HASH_METHOD)
+                    .setFeatures(randomId(FEATURES_BYTES))
+                    .setGlCommands(randomId(GL_COMMANDS_BYTES))
+                    .setSweepHashes(sweepHashes)
+                    .setPreWarmed(mRandom.nextBoolean())
+                    .build();
+        }
+
+        mRecentRecords[(int) (mRecords++ % RESUBMISSION_WINDOW)] = record;
+
+        return record;
+    }
+
+    /**
+     * Draws random bytes, encoded as URL-safe Base64 without padding.
+     *
+     * @param length the number of bytes.
+     * @return the encoded bytes.
+     */
+    private String randomId(int length) {
+        byte[] bytes = new byte[length];
+
+        mRandom.nextBytes(bytes);
+
+        return ENCODER.encodeToString(bytes);
+    }
+
+    /**
+     * Hashes a string with MD5, encoded as URL-safe Base64 without padding as the clients do.
+     *
+     * @param value the string.
+     * @return the encoded hash.
+     */
+    private static String md5(String value) {
+        try {
+            return ENCODER.encodeToString(MessageDigest.getInstance("MD5")
+                    .digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
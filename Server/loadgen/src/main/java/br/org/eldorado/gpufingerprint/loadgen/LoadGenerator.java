@@ -0,0 +1,358 @@
+package br.org.eldorado.gpufingerprint.loadgen;
+
+import br.org.eldorado.gpufingerprint.ingest.FileFingerprintStore;
+import br.org.eldorado.gpufingerprint.ingest.FingerprintCodec;
+import br.org.eldorado.gpufingerprint.ingest.IngestionServer;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator submitting the records of a synthetic fleet, drawn from a {@link FleetProfile},
+ * to the fingerprints endpoint of an {@link IngestionServer}.
+ * <p>
+ * Requests are scheduled open-loop: request {@code i} is due {@code i / rate} seconds after the
+ * start, whether or not earlier requests were answered, and is sent on its own virtual thread. A
+ * backend which can't keep up therefore sees the queue build up as a real fleet would make it, and
+ * the latency, measured from the due time, includes the time spent waiting. Request bodies are
+ * built ahead of their due time on a thread of their own, so the scheduling thread only waits and
+ * hands them out.
+ */
+public final class LoadGenerator {
+    /**
+     * The time a request may take before it counts as failed.
+     */
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * The number of request bodies built ahead of their due time.
+     */
+    private static final int SUBMISSION_LOOKAHEAD = 256;
+
+    /**
+     * The number of significant decimal digits kept by the latency histograms.
+     */
+    private static final int LATENCY_SIGNIFICANT_DIGITS = 3;
+
+    private static final int HTTP_OK = 200;
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    /**
+     * The command line option setting the seed of the fleet draws.
+     */
+    private static final String SEED_OPTION = "--seed";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * The fingerprints endpoint.
+     */
+    private final URI mTarget;
+
+    private final FleetProfile mProfile;
+
+    /**
+     * The seed of the fleet draws.
+     */
+    private final long mSeed;
+
+    /**
+     * Constructor.
+     *
+     * @param target  the fingerprints endpoint.
+     * @param profile the fleet profile.
+     * @param seed    the seed of the fleet draws, so a run can be reproduced against an empty
+     *                backend.
+     */
+    public LoadGenerator(URI target, FleetProfile profile, long seed) {
+        this.mTarget = target;
+        this.mProfile = profile;
+        this.mSeed = seed;
+    }
+
+    /**
+     * Submits records at a constant rate and waits for every request to complete. The HTTP client
+     * of the run is closed before returning.
+     *
+     * @param requestsPerSecond the rate requests are scheduled at.
+     * @param duration          the time requests are scheduled for.
+     * @param recordsPerRequest the number of records batched in each request.
+     * @return the report of the run.
+     * @throws IllegalArgumentException if the rate, the duration or the number of records is not
+     *                                  positive.
+     */
+    public LoadReport run(double requestsPerSecond, Duration duration, int recordsPerRequest) {
+        if (!(requestsPerSecond > 0) || duration.isNegative() || duration.isZero()
+                || (recordsPerRequest <= 0)) {
+            throw new IllegalArgumentException("Rate, duration and records per request must be "
+                    + "positive");
+        }
+
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        long requests = Math.max(1, (long) (duration.toNanos() / intervalNanos));
+        FleetSimulator fleet = new FleetSimulator(mProfile, mSeed);
+        BlockingQueue<String> bodies = new ArrayBlockingQueue<>(SUBMISSION_LOOKAHEAD);
+        long prefilled = Math.min(requests, SUBMISSION_LOOKAHEAD);
+        Results results = new Results();
+
+        for (long i = 0; i < prefilled; i++) {
+            bodies.add(createSubmission(fleet, recordsPerRequest));
+        }
+
+        long start;
+
+        try (ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(clientExecutor)
+                     .build();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.execute(() -> createSubmissions(fleet, recordsPerRequest,
+                    requests - prefilled, bodies));
+
+            start = System.nanoTime();
+
+            try {
+                for (long i = 0; i < requests; i++) {
+                    String body = bodies.take();
+                    long due = start + (long) (i * intervalNanos);
+
+                    for (long delay = due - System.nanoTime(); delay > 0;
+                         delay = due - System.nanoTime()) {
+                        LockSupport.parkNanos(delay);
+                    }
+
+                    executor.execute(() -> send(client, body, due, results));
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return new LoadReport(requestsPerSecond, requests, requests * recordsPerRequest,
+                System.nanoTime() - start, results.mSucceeded.sum(), results.mLatency,
+                results.getStatusErrors(), results.mExchangeErrors.sum(),
+                results.mExchangeErrorLatency, results.mRecordsAccepted.sum(),
+                results.mRecordsDuplicated.sum());
+    }
+
+    /**
+     * Creates request bodies in order, waiting for room in the queue of bodies built ahead.
+     *
+     * @param fleet    the fleet the records are drawn from.
+     * @param records  the number of records of each request.
+     * @param requests the number of request bodies.
+     * @param bodies   the queue of bodies built ahead.
+     */
+    private static void createSubmissions(FleetSimulator fleet, int records, long requests,
+                                          BlockingQueue<String> bodies) {
+        try {
+            for (long i = 0; i < requests; i++) {
+                bodies.put(createSubmission(fleet, records));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates the body of a request, a JSON array of records.
+     *
+     * @param fleet   the fleet the records are drawn from.
+     * @param records the number of records.
+     * @return the request body.
+     */
+    private static String createSubmission(FleetSimulator fleet, int records) {
+        StringBuilder body = new StringBuilder("[");
+
+        for (int i = 0; i < records; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+
+            body.append(FingerprintCodec.toJson(fleet.next()));
+        }
+
+        return body.append(']').toString();
+    }
+
+    /**
+     * Sends a request and records its outcome. The latency of every answered request is recorded,
+     * whatever its status, and the time until failure of the others apart.
+     *
+     * @param client  the HTTP client of the run.
+     * @param body    the request body.
+     * @param due     the time the request was scheduled to be sent, in nanoseconds.
+     * @param results the results of the run.
+     */
+    private void send(HttpClient client, String body, long due, Results results) {
+        HttpRequest request = HttpRequest.newBuilder(mTarget)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", JSON_CONTENT_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response;
+
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException | RuntimeException e) {
+            results.mExchangeErrorLatency.recordValue(System.nanoTime() - due);
+            results.mExchangeErrors.increment();
+            return;
+        } catch (InterruptedException e) {
+            results.mExchangeErrorLatency.recordValue(System.nanoTime() - due);
+            results.mExchangeErrors.increment();
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        results.mLatency.recordValue(System.nanoTime() - due);
+
+        if (response.statusCode() != HTTP_OK) {
+            results.mStatusErrors.computeIfAbsent(response.statusCode(),
+                    status -> new LongAdder()).increment();
+            return;
+        }
+
+        try {
+            JsonObject counts = JsonParser.parseString(response.body()).getAsJsonObject();
+
+            results.mRecordsAccepted.add(counts.get("accepted").getAsLong());
+            results.mRecordsDuplicated.add(counts.get("duplicated").getAsLong());
+            results.mSucceeded.increment();
+        } catch (RuntimeException e) {
+            results.mExchangeErrors.increment();
+        }
+    }
+
+    /**
+     * Runs the load generator, against a local ingestion service writing to a temporary store
+     * unless a fingerprints endpoint is given, and prints the report as JSON, along with the seed
+     * of the fleet draws so the run can be reproduced.
+     *
+     * @param args optionally {@value #SEED_OPTION} followed by the seed of the fleet draws, then
+     *             the requests per second, the duration in seconds and, optionally, the records
+     *             per request, the fleet profile file ("-" for the default one) and the
+     *             fingerprints endpoint.
+     * @throws Exception if the local service could not be run.
+     */
+    public static void main(String[] args) throws Exception {
+        long seed = System.nanoTime();
+
+        if ((args.length > 1) && SEED_OPTION.equals(args[0])) {
+            seed = Long.parseLong(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if ((args.length < 2) || (args.length > 5)) {
+            System.err.println("Usage: LoadGenerator [" + SEED_OPTION + " <seed>] "
+                    + "<requests per second> <seconds> [records per request] [fleet profile|-] "
+                    + "[fingerprints URL]");
+            System.exit(1);
+        }
+
+        double requestsPerSecond = Double.parseDouble(args[0]);
+        Duration duration = Duration.ofSeconds(Long.parseLong(args[1]));
+        int recordsPerRequest = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        FleetProfile profile = ((args.length > 3) && !"-".equals(args[3]))
+                ? FleetProfile.load(Paths.get(args[3])) : FleetProfile.getDefault();
+        Map<String, Object> output = new LinkedHashMap<>();
+
+        output.put("seed", seed);
+
+        if (args.length > 4) {
+            output.put("load", new LoadGenerator(URI.create(args[4]), profile, seed)
+                    .run(requestsPerSecond, duration, recordsPerRequest).snapshot());
+        } else {
+            Path file = Files.createTempFile("fingerprints", ".jsonl");
+
+            try (FileFingerprintStore store = new FileFingerprintStore(file)) {
+                IngestionServer server = new IngestionServer(
+                        new InetSocketAddress("localhost", 0), store);
+
+                server.start();
+
+                try {
+                    URI target = URI.create("http://localhost:" + server.getPort()
+                            + IngestionServer.FINGERPRINTS_PATH);
+
+                    output.put("load", new LoadGenerator(target, profile, seed)
+                            .run(requestsPerSecond, duration, recordsPerRequest).snapshot());
+                    output.put("server", server.getMetrics().snapshot());
+                } finally {
+                    server.close();
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
+
+        System.out.println(GSON.toJson(output));
+    }
+
+    /**
+     * Outcome of the requests of a run, updated concurrently by the request threads.
+     */
+    private static final class Results {
+        private final LongAdder mSucceeded = new LongAdder();
+
+        /**
+         * The latency of the answered requests, whatever their status, in nanoseconds.
+         */
+        private final Histogram mLatency = new ConcurrentHistogram(LATENCY_SIGNIFICANT_DIGITS);
+
+        private final Map<Integer, LongAdder> mStatusErrors = new ConcurrentHashMap<>();
+
+        private final LongAdder mExchangeErrors = new LongAdder();
+
+        /**
+         * The time until the requests which got no response failed, in nanoseconds.
+         */
+        private final Histogram mExchangeErrorLatency =
+                new ConcurrentHistogram(LATENCY_SIGNIFICANT_DIGITS);
+
+        private final LongAdder mRecordsAccepted = new LongAdder();
+
+        private final LongAdder mRecordsDuplicated = new LongAdder();
+
+        /**
+         * Returns the number of requests answered with each error status.
+         *
+         * @return the error count of each status.
+         */
+        Map<Integer, Long> getStatusErrors() {
+            Map<Integer, Long> statusErrors = new LinkedHashMap<>();
+
+            mStatusErrors.forEach((status, count) -> statusErrors.put(status, count.sum()));
+
+            return statusErrors;
+        }
+    }
+}
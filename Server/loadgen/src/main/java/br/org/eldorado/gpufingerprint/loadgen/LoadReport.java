@@ -0,0 +1,263 @@
+package br.org.eldorado.gpufingerprint.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link LoadGenerator} run. Latencies are measured from the time each request was
+ * scheduled to be sent, so time spent queued behind a slow backend is not hidden.
+ */
+public final class LoadReport {
+    /**
+     * The latency percentiles published by {@link #snapshot()}.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * The names of {@link #PERCENTILES} in the snapshot.
+     */
+    private static final String[] PERCENTILE_NAMES = {"P50", "P90", "P99", "P999"};
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double mTargetRequestsPerSecond;
+
+    private final long mRequests;
+
+    private final long mRecords;
+
+    private final long mElapsedNanos;
+
+    private final long mSucceeded;
+
+    /**
+     * The latency of the answered requests, whatever their status, in nanoseconds.
+     */
+    private final Histogram mLatency;
+
+    /**
+     * The number of requests answered with each error status.
+     */
+    private final Map<Integer, Long> mStatusErrors;
+
+    /**
+     * The number of requests which failed without a valid response.
+     */
+    private final long mExchangeErrors;
+
+    /**
+     * The time until the requests which failed without a valid response failed, in nanoseconds.
+     */
+    private final Histogram mExchangeErrorLatency;
+
+    private final long mRecordsAccepted;
+
+    private final long mRecordsDuplicated;
+
+    /**
+     * Constructor.
+     *
+     * @param targetRequestsPerSecond the rate the requests were scheduled at.
+     * @param requests                the number of requests sent.
+     * @param records                 the number of records sent.
+     * @param elapsedNanos            the time from the first request being scheduled to the last
+     *                                one completing, in nanoseconds.
+     * @param succeeded               the number of requests answered successfully.
+     * @param latency                 the latency of the answered requests, whatever their
+     *                                status, in nanoseconds.
+     * @param statusErrors            the number of requests answered with each error status.
+     * @param exchangeErrors          the number of requests which failed without a valid
+     *                                response.
+     * @param exchangeErrorLatency    the time until the requests which got no response failed,
+     *                                in nanoseconds.
+     * @param recordsAccepted         the number of records the backend stored.
+     * @param recordsDuplicated       the number of records the backend dropped as duplicates.
+     */
+    LoadReport(double targetRequestsPerSecond, long requests, long records, long elapsedNanos,
+               long succeeded, Histogram latency, Map<Integer, Long> statusErrors,
+               long exchangeErrors, Histogram exchangeErrorLatency, long recordsAccepted,
+               long recordsDuplicated) {
+        this.mTargetRequestsPerSecond = targetRequestsPerSecond;
+        this.mRequests = requests;
+        this.mRecords = records;
+        this.mElapsedNanos = elapsedNanos;
+        this.mSucceeded = succeeded;
+        this.mLatency = latency;
+        this.mStatusErrors = Collections.unmodifiableMap(new TreeMap<>(statusErrors));
+        this.mExchangeErrors = exchangeErrors;
+        this.mExchangeErrorLatency = exchangeErrorLatency;
+        this.mRecordsAccepted = recordsAccepted;
+        this.mRecordsDuplicated = recordsDuplicated;
+    }
+
+    /**
+     * Returns the number of requests sent.
+     *
+     * @return the number of requests.
+     */
+    public long getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * Returns the number of records sent, including resubmissions.
+     *
+     * @return the number of records.
+     */
+    public long getRecords() {
+        return mRecords;
+    }
+
+    /**
+     * Returns the time from the first request being scheduled to the last one completing.
+     *
+     * @return the elapsed time, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Returns the number of requests answered successfully.
+     *
+     * @return the number of successful requests.
+     */
+    public long getSucceeded() {
+        return mSucceeded;
+    }
+
+    /**
+     * Returns the number of requests answered with each error status.
+     *
+     * @return the error count of each status, by ascending status.
+     */
+    public Map<Integer, Long> getStatusErrors() {
+        return mStatusErrors;
+    }
+
+    /**
+     * Returns the number of requests which failed without a valid response, because of a
+     * connection failure, a timeout or a malformed response.
+     *
+     * @return the number of failed exchanges.
+     */
+    public long getExchangeErrors() {
+        return mExchangeErrors;
+    }
+
+    /**
+     * Returns the fraction of the requests which failed.
+     *
+     * @return the error rate.
+     */
+    public double getErrorRate() {
+        return (mRequests > 0) ? (mRequests - getSucceeded()) / (double) mRequests : 0;
+    }
+
+    /**
+     * Returns the number of new records the backend stored.
+     *
+     * @return the number of accepted records.
+     */
+    public long getRecordsAccepted() {
+        return mRecordsAccepted;
+    }
+
+    /**
+     * Returns the number of records the backend dropped as duplicates.
+     *
+     * @return the number of duplicated records.
+     */
+    public long getRecordsDuplicated() {
+        return mRecordsDuplicated;
+    }
+
+    /**
+     * Returns the achieved throughput of successful requests.
+     *
+     * @return the successful requests per second.
+     */
+    public double getRequestsPerSecond() {
+        return (mElapsedNanos > 0) ? getSucceeded() * NANOS_PER_SECOND / mElapsedNanos : 0;
+    }
+
+    /**
+     * Returns the achieved throughput of records handled by the backend.
+     *
+     * @return the accepted and duplicated records per second.
+     */
+    public double getRecordsPerSecond() {
+        return (mElapsedNanos > 0)
+                ? (mRecordsAccepted + mRecordsDuplicated) * NANOS_PER_SECOND / mElapsedNanos : 0;
+    }
+
+    /**
+     * Returns a latency percentile of the answered requests, whatever their status.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the latency, in nanoseconds.
+     */
+    public long getLatencyNanos(double percentile) {
+        return mLatency.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Returns a percentile of the time until the requests which got no response failed.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the time until failure, in nanoseconds, or zero if every request was answered.
+     */
+    public long getExchangeErrorLatencyNanos(double percentile) {
+        return mExchangeErrorLatency.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Returns a snapshot of the report, keyed by name. Latencies are in microseconds.
+     *
+     * @return the report snapshot.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+
+        snapshot.put("targetRequestsPerSecond", mTargetRequestsPerSecond);
+        snapshot.put("requests", mRequests);
+        snapshot.put("records", mRecords);
+        snapshot.put("elapsedSeconds", mElapsedNanos / NANOS_PER_SECOND);
+        snapshot.put("requestsPerSecond", getRequestsPerSecond());
+        snapshot.put("recordsPerSecond", getRecordsPerSecond());
+        snapshot.put("recordsAccepted", mRecordsAccepted);
+        snapshot.put("recordsDuplicated", mRecordsDuplicated);
+        snapshot.put("errorRate", getErrorRate());
+        snapshot.put("statusErrors", mStatusErrors);
+        snapshot.put("exchangeErrors", mExchangeErrors);
+
+        putLatencies(snapshot, "latency", mLatency);
+        putLatencies(snapshot, "exchangeErrorLatency", mExchangeErrorLatency);
+
+        return snapshot;
+    }
+
+    /**
+     * Adds the percentiles and the maximum of a latency histogram to a snapshot, in microseconds.
+     *
+     * @param snapshot the snapshot.
+     * @param name     the name prefix of the entries.
+     * @param latency  the latency histogram, in nanoseconds.
+     */
+    private static void putLatencies(Map<String, Object> snapshot, String name,
+                                     Histogram latency) {
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            snapshot.put(name + PERCENTILE_NAMES[i] + "Micros",
+                    latency.getValueAtPercentile(PERCENTILES[i]) / NANOS_PER_MICRO);
+        }
+
+        snapshot.put(name + "MaxMicros", latency.getMaxValue() / NANOS_PER_MICRO);
+    }
+}
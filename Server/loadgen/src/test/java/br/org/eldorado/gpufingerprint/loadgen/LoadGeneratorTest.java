@@ -0,0 +1,180 @@
+package br.org.eldorado.gpufingerprint.loadgen;
+
+import br.org.eldorado.gpufingerprint.ingest.FileFingerprintStore;
+import br.org.eldorado.gpufingerprint.ingest.FingerprintRecord;
+import br.org.eldorado.gpufingerprint.ingest.IngestionServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link FleetSimulator} and of {@link LoadGenerator} running against a local
+ * {@link IngestionServer} with the embedded file store.
+ */
+public class LoadGeneratorTest {
+    private static final String PROFILE = "{\"devices\":["
+            + "{\"weight\":3,\"manufacturer\":\"samsung\",\"model\":\"SM-G960F\","
+            + "\"gpuName\":\"Mali-G72\",\"gpuVendor\":\"ARM\",\"openGLVersion\":\"OpenGL ES 3.2\"},"
+            + "{\"weight\":1,\"manufacturer\":\"Google\",\"model\":\"Pixel 3\","
+            + "\"gpuName\":\"Adreno (TM) 630\",\"gpuVendor\":\"Qualcomm\","
+            + "\"openGLVersion\":\"OpenGL ES 3.2\"}],"
+            + "\"osVersions\":[{\"weight\":1,\"osVersion\":\"9\",\"apiLevel\":28}],"
+            + "\"hashCollisionRate\":%s,\"resubmissionRate\":%s}";
+
+    private static final long SEED = 42;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileFingerprintStore store;
+
+    private IngestionServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileFingerprintStore(folder.getRoot().toPath().resolve("fingerprints.jsonl"));
+        server = new IngestionServer(new InetSocketAddress("localhost", 0), store);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        store.close();
+    }
+
+    @Test
+    public void fleetFollowsTheProfileRates() {
+        FleetSimulator fleet = new FleetSimulator(profile(0.5, 0.1), SEED);
+        Set<String> keys = new HashSet<>();
+        Set<String> hashes = new HashSet<>();
+        int records = 20000;
+        int resubmitted = 0;
+        int mali = 0;
+
+        for (int i = 0; i < records; i++) {
+            FingerprintRecord record = fleet.next();
+
+            assertEquals(22, record.getHash().length());
+
+            if (!keys.add(record.getKey())) {
+                resubmitted++;
+            }
+
+            hashes.add(record.getHash());
+
+            if ("Mali-G72".equals(record.getGpuName())) {
+                mali++;
+            }
+        }
+
+        int unique = records - resubmitted;
+
+        assertEquals(0.1, resubmitted / (double) records, 0.01);
+        assertEquals(0.75, mali / (double) records, 0.02);
+        // Colliding devices share two hashes, the other half of the fleet draws unique ones.
+        assertEquals(0.5 * unique + 2, hashes.size(), 0.02 * unique);
+    }
+
+    @Test
+    public void everyCollidingDeviceOfAKindSharesItsHash() {
+        FleetSimulator fleet = new FleetSimulator(profile(1, 0), SEED);
+        Set<String> hashes = new HashSet<>();
+
+        for (int i = 0; i < 1000; i++) {
+            hashes.add(fleet.next().getHash());
+        }
+
+        assertEquals(2, hashes.size());
+    }
+
+    @Test
+    public void recordsCarryTheClientDiagnostics() {
+        FingerprintRecord record = new FleetSimulator(profile(0.5, 0), SEED).next();
+
+        assertEquals("reduction", record.getHashMethod());
+        assertEquals(1024, Base64.getUrlDecoder().decode(record.getFeatures()).length);
+        assertTrue(record.getGlCommands().length() > 2048);
+        assertEquals(5, record.getSweepHashes().size());
+        assertEquals(22, record.getSweepHashes().get("RGB565").length());
+        assertNotNull(record.getPreWarmed());
+    }
+
+    @Test
+    public void runSubmitsEveryRecordAtTheTargetRate() {
+        LoadReport report = new LoadGenerator(fingerprintsUri(IngestionServer.FINGERPRINTS_PATH),
+                profile(0.5, 0.1), SEED).run(50, Duration.ofSeconds(1), 5);
+
+        // The last of the 50 requests is due 980 ms after the start; the run must neither send it
+        // early nor fall behind the schedule.
+        assertTrue(report.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(980));
+        assertTrue(report.getElapsedNanos() < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(50, report.getRequests());
+        assertEquals(50, report.getSucceeded());
+        assertEquals(0, report.getErrorRate(), 0);
+        assertEquals(250, report.getRecordsAccepted() + report.getRecordsDuplicated());
+        assertTrue(report.getRecordsDuplicated() > 0);
+        assertEquals(report.getRecordsAccepted(), server.getMetrics().getRecordsAccepted());
+        assertTrue(report.getLatencyNanos(50) <= report.getLatencyNanos(99));
+    }
+
+    @Test
+    public void errorStatusesAreCounted() {
+        LoadReport report = new LoadGenerator(fingerprintsUri(IngestionServer.METRICS_PATH),
+                FleetProfile.getDefault(), SEED).run(100, Duration.ofSeconds(1), 1);
+
+        assertEquals(0, report.getSucceeded());
+        assertEquals(1, report.getErrorRate(), 0);
+        assertEquals(Long.valueOf(100), report.getStatusErrors().get(405));
+        assertEquals(0, server.getMetrics().getRecordsAccepted());
+        // Error responses are answered requests, so their latency counts.
+        assertTrue(report.getLatencyNanos(50) > 0);
+        assertEquals(0, report.getExchangeErrorLatencyNanos(100));
+    }
+
+    @Test
+    public void exchangeErrorsAreTimedApart() throws Exception {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        LoadReport report = new LoadGenerator(URI.create("http://localhost:" + port
+                + IngestionServer.FINGERPRINTS_PATH), FleetProfile.getDefault(), SEED)
+                .run(20, Duration.ofSeconds(1), 1);
+
+        assertEquals(20, report.getExchangeErrors());
+        assertEquals(1, report.getErrorRate(), 0);
+        assertEquals(0, report.getLatencyNanos(100));
+        assertTrue(report.getExchangeErrorLatencyNanos(50) > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void profileRatesMustBeProbabilities() {
+        profile(1.5, 0);
+    }
+
+    private static FleetProfile profile(double hashCollisionRate, double resubmissionRate) {
+        return FleetProfile.parse(String.format(Locale.ROOT, PROFILE, hashCollisionRate,
+                resubmissionRate));
+    }
+
+    private URI fingerprintsUri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}